@@ -0,0 +1,82 @@
+package org.example.demofunkos.cache.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.example.demofunkos.cache.services.JsonSnapshot;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Configuration
+@EnableConfigurationProperties(CachePolicyProperties.class)
+public class CacheConfig {
+
+    @Bean
+    public CacheManager cacheManager(CachePolicyProperties properties, List<CacheReloader> reloaders) {
+        Map<String, CacheReloader> reloadersByCache = reloaders.stream()
+                .collect(Collectors.toMap(CacheReloader::cacheName, Function.identity()));
+
+        var cacheManager = new CaffeineCacheManager();
+        cacheManager.setCaffeine(builder(properties.getDefaults()));
+        properties.getPolicies().forEach((name, policy) ->
+                cacheManager.registerCustomCache(name, build(name, policy, reloadersByCache.get(name))));
+        return cacheManager;
+    }
+
+    @Bean
+    public JsonSnapshot funkosSnapshot(ObjectMapper objectMapper) {
+        return new JsonSnapshot("funkos", objectMapper);
+    }
+
+    @Bean
+    public JsonSnapshot categoriasSnapshot(ObjectMapper objectMapper) {
+        return new JsonSnapshot("categorias", objectMapper);
+    }
+
+    private Cache<Object, Object> build(String name, CachePolicyProperties.Policy policy, CacheReloader reloader) {
+        log.info("Configurando cache " + name + ": maximo " + policy.getMaximumSize() + " entradas, expira tras "
+                + policy.getExpireAfterWrite() + ", refresco tras " + policy.getRefreshAfterWrite());
+        var builder = builder(policy);
+        if (policy.getRefreshAfterWrite() == null) {
+            return builder.build();
+        }
+        if (reloader == null) {
+            log.warn("La cache " + name + " tiene refresh-after-write pero no hay CacheReloader, se ignora el refresco");
+            return builder.build();
+        }
+        return builder.refreshAfterWrite(policy.getRefreshAfterWrite()).build(new CacheLoader<>() {
+            @Override
+            public Object load(Object key) {
+                // Los fallos los resuelve el metodo @Cacheable, el loader solo se usa para refrescar
+                return null;
+            }
+
+            @Override
+            public Object reload(Object key, Object oldValue) {
+                return reloader.reload(key);
+            }
+        });
+    }
+
+    private Caffeine<Object, Object> builder(CachePolicyProperties.Policy policy) {
+        // Con maximumSize Caffeine usa W-TinyLFU como politica de expulsion
+        var builder = Caffeine.newBuilder()
+                .maximumSize(policy.getMaximumSize())
+                .recordStats();
+        if (policy.getExpireAfterWrite() != null) {
+            builder.expireAfterWrite(policy.getExpireAfterWrite());
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,22 @@
+package org.example.demofunkos.cache.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "cache")
+public class CachePolicyProperties {
+    private Policy defaults = new Policy();
+    private Map<String, Policy> policies = new HashMap<>();
+
+    @Data
+    public static class Policy {
+        private long maximumSize = 1000;
+        private Duration expireAfterWrite;
+        private Duration refreshAfterWrite;
+    }
+}
@@ -0,0 +1,7 @@
+package org.example.demofunkos.cache.config;
+
+public interface CacheReloader {
+    String cacheName();
+
+    Object reload(Object key);
+}
@@ -0,0 +1,27 @@
+package org.example.demofunkos.cache.services;
+
+import org.springframework.util.DigestUtils;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+public final class ETags {
+
+    private ETags() {
+    }
+
+    public static String of(Object id, LocalDateTime... updatedAt) {
+        var etag = new StringBuilder(String.valueOf(id));
+        for (LocalDateTime fecha : updatedAt) {
+            if (fecha != null) {
+                long nanos = fecha.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + fecha.getNano();
+                etag.append('-').append(Long.toHexString(nanos));
+            }
+        }
+        return etag.toString();
+    }
+
+    public static String of(byte[] body) {
+        return DigestUtils.md5DigestAsHex(body);
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.demofunkos.cache.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+@Slf4j
+public class JsonSnapshot {
+    private final String name;
+    private final ObjectMapper objectMapper;
+    private final AtomicLong version = new AtomicLong();
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    private volatile Snapshot current;
+
+    public record Snapshot(long version, byte[] json, String etag) {
+    }
+
+    public JsonSnapshot(String name, ObjectMapper objectMapper) {
+        this.name = name;
+        this.objectMapper = objectMapper;
+    }
+
+    public Snapshot get(Supplier<?> loader) {
+        Snapshot snapshot = current;
+        if (snapshot != null && snapshot.version() == version.get()) {
+            return snapshot;
+        }
+
+        // Solo un hilo reconstruye, el resto espera y reutiliza el resultado
+        rebuildLock.lock();
+        try {
+            long expected = version.get();
+            snapshot = current;
+            if (snapshot != null && snapshot.version() == expected) {
+                return snapshot;
+            }
+            log.debug("Reconstruyendo snapshot " + name + " version " + expected);
+            byte[] json = objectMapper.writeValueAsBytes(loader.get());
+            snapshot = new Snapshot(expected, json, ETags.of(json));
+            current = snapshot;
+            return snapshot;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se ha podido serializar el snapshot " + name, e);
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    // Dentro de una transaccion se invalida al confirmar: si se hiciera antes, un lector concurrente
+    // reconstruiria con los datos aun sin confirmar ocultos y dejaria el snapshot viejo con la version nueva
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    version.incrementAndGet();
+                }
+            });
+        } else {
+            version.incrementAndGet();
+        }
+    }
+}
@@ -1,18 +1,21 @@
 package org.example.demofunkos.categoria.controllers;
 
 import jakarta.validation.Valid;
+import org.example.demofunkos.cache.services.ETags;
+import org.example.demofunkos.cache.services.JsonSnapshot;
 import org.example.demofunkos.categoria.dto.CategoriaDto;
 import org.example.demofunkos.categoria.models.Categoria;
 import org.example.demofunkos.categoria.services.CategoriaServiceImpl;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -20,20 +23,29 @@ import java.util.UUID;
 @RequestMapping("/categorias")
 public class CategoriaController {
     private CategoriaServiceImpl service;
+    private JsonSnapshot categoriasSnapshot;
 
     @Autowired
-    public CategoriaController(CategoriaServiceImpl service) {
+    public CategoriaController(CategoriaServiceImpl service, @Qualifier("categoriasSnapshot") JsonSnapshot categoriasSnapshot) {
         this.service = service;
+        this.categoriasSnapshot = categoriasSnapshot;
     }
 
     @GetMapping
-    public ResponseEntity<List<Categoria>> getAll() {
-        return ResponseEntity.ok(service.getAll());
+    public ResponseEntity<byte[]> getAll() {
+        var snapshot = categoriasSnapshot.get(service::getAll);
+        return ResponseEntity.ok()
+                .eTag(snapshot.etag())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(snapshot.json());
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<Categoria> getById(@PathVariable String id) {
-        return ResponseEntity.ok(service.getById(id));
+        var categoria = service.getById(id);
+        return ResponseEntity.ok()
+                .eTag(ETags.of(categoria.getId(), categoria.getUpdatedAt()))
+                .body(categoria);
     }
 
     @PostMapping
@@ -1,14 +1,19 @@
 package org.example.demofunkos.categoria.services;
 
+import org.example.demofunkos.cache.services.JsonSnapshot;
 import org.example.demofunkos.categoria.dto.CategoriaDto;
 import org.example.demofunkos.categoria.mappers.CategoriaMapper;
 import org.example.demofunkos.categoria.models.Categoria;
 import org.example.demofunkos.categoria.repositories.CategoriaRepository;
 import org.example.demofunkos.categoria.validator.CategoriaValidator;
+import org.example.demofunkos.funkos.services.FunkoServiceImpl;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.cache.annotation.CacheConfig;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
@@ -19,15 +24,23 @@ import java.util.UUID;
 @Service
 @CacheConfig(cacheNames = {"categorias"})
 public class CategoriaServiceImpl implements CategoriaService {
+    static final String CACHE_POR_NOMBRE = "categoriasPorNombre";
+
     private CategoriaRepository repository;
     private CategoriaMapper mapper;
     private CategoriaValidator validator;
+    private JsonSnapshot categoriasSnapshot;
+    private JsonSnapshot funkosSnapshot;
 
     @Autowired
-    public CategoriaServiceImpl(CategoriaRepository repository, CategoriaMapper mapper, CategoriaValidator validator) {
+    public CategoriaServiceImpl(CategoriaRepository repository, CategoriaMapper mapper, CategoriaValidator validator,
+                                @Qualifier("categoriasSnapshot") JsonSnapshot categoriasSnapshot,
+                                @Qualifier("funkosSnapshot") JsonSnapshot funkosSnapshot) {
         this.repository = repository;
         this.mapper = mapper;
         this.validator = validator;
+        this.categoriasSnapshot = categoriasSnapshot;
+        this.funkosSnapshot = funkosSnapshot;
     }
 
     @Override
@@ -36,7 +49,7 @@ public class CategoriaServiceImpl implements CategoriaService {
     }
 
     @Override
-    @Cacheable
+    @Cacheable(key = "#id")
     public Categoria getById(String id) {
         if (!validator.isIdValid(id)) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La id no es válida. Debe ser un UUID");
@@ -47,7 +60,7 @@ public class CategoriaServiceImpl implements CategoriaService {
     }
 
     @Override
-    @Cacheable
+    @Cacheable(cacheNames = CACHE_POR_NOMBRE, key = "#nombre")
     public Categoria getByNombre(String nombre) {
         return repository.findByNombre(nombre).orElseThrow(
                 () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "La categoria " + nombre + " no existe")
@@ -55,16 +68,24 @@ public class CategoriaServiceImpl implements CategoriaService {
     }
 
     @Override
-    @CachePut
+    @Caching(put = {
+            @CachePut(key = "#result.id.toString()"),
+            @CachePut(cacheNames = CACHE_POR_NOMBRE, key = "#result.nombre")
+    })
     public Categoria save(CategoriaDto categoriaDto) {
         if (!validator.isNameUnique(categoriaDto.getNombre())) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El nombre de la categoria no es válido.");
         }
-        return repository.save(mapper.toCategoria(categoriaDto));
+        var categoria = repository.save(mapper.toCategoria(categoriaDto));
+        categoriasSnapshot.invalidate();
+        return categoria;
     }
 
+    // El nombre anterior no se conoce hasta cargar la categoria, asi que se vacia la cache por nombre entera:
+    // las categorias son pocas y cambian poco. Los funkos cacheados llevan la categoria embebida y tambien se vacian
     @Override
-    @CachePut
+    @Caching(put = @CachePut(key = "#id"), evict = @CacheEvict(
+            cacheNames = {CACHE_POR_NOMBRE, FunkoServiceImpl.CACHE, FunkoServiceImpl.CACHE_POR_NOMBRE}, allEntries = true))
     public Categoria update(String id, CategoriaDto categoriaDto) {
         System.out.println("Buscando id: " + id);
         if (!validator.isIdValid(id)) {
@@ -76,11 +97,14 @@ public class CategoriaServiceImpl implements CategoriaService {
         if (!validator.isNameUnique(mapper.toCategoria(categoriaDto).getNombre())) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El nombre de la categoria ya existe");
         }
-        return repository.save(mapper.toCategoriaUpdate(categoriaDto, res));
+        var categoria = repository.save(mapper.toCategoriaUpdate(categoriaDto, res));
+        invalidateSnapshots();
+        return categoria;
     }
 
     @Override
-    @CachePut
+    @Caching(put = @CachePut(key = "#id"), evict = @CacheEvict(
+            cacheNames = {CACHE_POR_NOMBRE, FunkoServiceImpl.CACHE, FunkoServiceImpl.CACHE_POR_NOMBRE}, allEntries = true))
     public Categoria delete(String id, CategoriaDto categoriaDto) {
         System.out.println("Buscando id: " + id);
         if (!validator.isIdValid(id)) {
@@ -89,6 +113,14 @@ public class CategoriaServiceImpl implements CategoriaService {
         var res = repository.findByIdAndActivadoTrue(UUID.fromString(id)).orElseThrow(
                 () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "La categoria con id " + id + " no se ha encontrado.")
         );
-        return repository.save(mapper.toCategoriaUpdate(categoriaDto, res));
+        var categoria = repository.save(mapper.toCategoriaUpdate(categoriaDto, res));
+        invalidateSnapshots();
+        return categoria;
+    }
+
+    private void invalidateSnapshots() {
+        // Los funkos incluyen su categoria, asi que tambien hay que regenerar su listado
+        categoriasSnapshot.invalidate();
+        funkosSnapshot.invalidate();
     }
 }
\ No newline at end of file
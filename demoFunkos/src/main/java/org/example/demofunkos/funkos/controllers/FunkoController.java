@@ -1,16 +1,33 @@
 package org.example.demofunkos.funkos.controllers;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import org.example.demofunkos.cache.services.ETags;
+import org.example.demofunkos.cache.services.JsonSnapshot;
+import org.example.demofunkos.funkos.dto.FunkoCambiosDto;
 import org.example.demofunkos.funkos.dto.FunkoDto;
+import org.example.demofunkos.funkos.dto.FunkoImportResultDto;
+import org.example.demofunkos.funkos.dto.FunkoPageDto;
 import org.example.demofunkos.funkos.models.Funko;
+import org.example.demofunkos.funkos.services.FunkoImportService;
 import org.example.demofunkos.funkos.services.FunkoService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,20 +36,60 @@ import java.util.Map;
 @RequestMapping("/funkos")
 public class FunkoController {
     private FunkoService service;
+    private FunkoImportService importService;
+    private JsonSnapshot funkosSnapshot;
+
+    @Value("${funkos.export.timeout:30m}")
+    private Duration exportTimeout = Duration.ofMinutes(30);
 
     @Autowired
-    public FunkoController(FunkoService funkoService) {
+    public FunkoController(FunkoService funkoService, FunkoImportService importService, @Qualifier("funkosSnapshot") JsonSnapshot funkosSnapshot) {
         this.service = funkoService;
+        this.importService = importService;
+        this.funkosSnapshot = funkosSnapshot;
     }
 
     @GetMapping
-    public ResponseEntity<List<Funko>> getAll() {
-        return ResponseEntity.ok(service.getAll());
+    public ResponseEntity<byte[]> getAll() {
+        var snapshot = funkosSnapshot.get(service::getAll);
+        return ResponseEntity.ok()
+                .eTag(snapshot.etag())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(snapshot.json());
+    }
+
+    @GetMapping(params = "size")
+    public ResponseEntity<FunkoPageDto> getPage(
+            @RequestParam int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "asc") String sort) {
+        return ResponseEntity.ok(service.getPage(cursor, size, sort));
+    }
+
+    // El export puede durar mucho mas que el resto de peticiones asincronas: su timeout va aparte
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public WebAsyncTask<Void> export(HttpServletResponse response) {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        return new WebAsyncTask<>(exportTimeout.toMillis(), () -> {
+            service.exportAll(response.getOutputStream());
+            return null;
+        });
+    }
+
+    @GetMapping("/changes")
+    public ResponseEntity<FunkoCambiosDto> getCambios(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(defaultValue = "500") int size) {
+        return ResponseEntity.ok(service.getCambios(since, afterId, size));
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<Funko> getById(@PathVariable Long id) {
-        return ResponseEntity.ok(service.getById(String.valueOf(id)));
+        var funko = service.getById(String.valueOf(id));
+        return ResponseEntity.ok()
+                .eTag(etag(funko))
+                .body(funko);
     }
 
     @PostMapping
@@ -41,6 +98,18 @@ public class FunkoController {
         return ResponseEntity.status(HttpStatus.CREATED).body(res);
     }
 
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<FunkoImportResultDto> importFunkos(@RequestBody List<FunkoDto> funkos) {
+        return ResponseEntity.ok(importService.importAll(funkos));
+    }
+
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<FunkoImportResultDto> importFunkosFile(@RequestPart("file") MultipartFile file) throws IOException {
+        try (InputStream json = file.getInputStream()) {
+            return ResponseEntity.ok(importService.importFrom(json));
+        }
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<Funko> update(@PathVariable Long id, @Valid @RequestBody FunkoDto funkoDto) {
         var res = service.update(String.valueOf(id), funkoDto);
@@ -53,6 +122,13 @@ public class FunkoController {
         return ResponseEntity.ok(res);
     }
 
+    private String etag(Funko funko) {
+        // La categoria va embebida en la respuesta. Al cambiar una categoria CategoriaServiceImpl vacia las caches
+        // de funkos, asi que el funko se recarga con la categoria actual y su updatedAt cambia el ETag
+        var categoria = funko.getCategoria();
+        return ETags.of(funko.getId(), funko.getUpdatedAt(), categoria == null ? null : categoria.getUpdatedAt());
+    }
+
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public Map<String, String> handleValidationExceptions(
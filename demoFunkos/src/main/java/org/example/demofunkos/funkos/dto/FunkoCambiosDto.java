@@ -0,0 +1,13 @@
+package org.example.demofunkos.funkos.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public record FunkoCambiosDto(
+        List<FunkoResumenDto> cambios,
+        List<Long> borrados,
+        LocalDateTime since,
+        Long afterId,
+        boolean hasMore
+) {
+}
@@ -0,0 +1,8 @@
+package org.example.demofunkos.funkos.dto;
+
+public record FunkoImportErrorDto(
+        int fila,
+        String nombre,
+        String error
+) {
+}
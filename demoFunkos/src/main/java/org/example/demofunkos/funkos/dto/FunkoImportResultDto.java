@@ -0,0 +1,12 @@
+package org.example.demofunkos.funkos.dto;
+
+import java.util.List;
+
+public record FunkoImportResultDto(
+        int total,
+        int importados,
+        List<FunkoImportErrorDto> errores,
+        long elapsedMillis,
+        double filasPorSegundo
+) {
+}
@@ -0,0 +1,12 @@
+package org.example.demofunkos.funkos.dto;
+
+import java.util.List;
+
+public record FunkoPageDto(
+        List<FunkoResumenDto> content,
+        int size,
+        String sort,
+        String nextCursor,
+        boolean hasNext
+) {
+}
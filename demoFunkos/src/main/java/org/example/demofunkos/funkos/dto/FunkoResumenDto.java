@@ -0,0 +1,13 @@
+package org.example.demofunkos.funkos.dto;
+
+import java.time.LocalDateTime;
+
+public record FunkoResumenDto(
+        Long id,
+        String nombre,
+        Double precio,
+        String categoria,
+        LocalDateTime createdAt,
+        LocalDateTime updatedAt
+) {
+}
@@ -18,7 +18,7 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "funkos")
+@Table(name = "funkos", indexes = @Index(name = "idx_funkos_updated_at", columnList = "updated_at"))
 @EntityListeners(AuditingEntityListener.class)
 public class Funko {
     private static final Long DEFAULT_ID = 0L;
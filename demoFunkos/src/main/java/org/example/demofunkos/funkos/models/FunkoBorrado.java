@@ -0,0 +1,21 @@
+package org.example.demofunkos.funkos.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "funkos_borrados", indexes = @Index(name = "idx_funkos_borrados_deleted_at", columnList = "deleted_at"))
+public class FunkoBorrado {
+    @Id
+    private Long id;
+
+    @Column(name = "deleted_at", nullable = false)
+    private LocalDateTime deletedAt;
+}
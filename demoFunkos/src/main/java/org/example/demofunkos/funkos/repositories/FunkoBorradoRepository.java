@@ -0,0 +1,22 @@
+package org.example.demofunkos.funkos.repositories;
+
+import org.example.demofunkos.funkos.models.FunkoBorrado;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface FunkoBorradoRepository extends JpaRepository<FunkoBorrado, Long> {
+    // Mismo keyset que FunkoRepository.findCambios, para paginar cambios y borrados con un solo cursor
+    @Query("select b from FunkoBorrado b where (b.deletedAt > :since or (b.deletedAt = :since and b.id > :afterId)) and b.deletedAt <= :hasta order by b.deletedAt, b.id")
+    List<FunkoBorrado> findBorrados(LocalDateTime since, Long afterId, LocalDateTime hasta, Limit limit);
+
+    @Modifying
+    @Query("delete from FunkoBorrado b where b.deletedAt < :limite")
+    int deleteAnterioresA(LocalDateTime limite);
+}
@@ -1,14 +1,57 @@
 package org.example.demofunkos.funkos.repositories;
 
+import jakarta.persistence.QueryHint;
+import org.example.demofunkos.funkos.dto.FunkoResumenDto;
 import org.example.demofunkos.funkos.models.Funko;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Repository
 public interface FunkoRepository extends JpaRepository<Funko, Long> {
+    String SELECT_RESUMEN = "select new org.example.demofunkos.funkos.dto.FunkoResumenDto(" +
+            "f.id, f.nombre, f.precio, c.nombre, f.createdAt, f.updatedAt) from Funko f left join f.categoria c ";
+
+    @Override
+    @EntityGraph(attributePaths = "categoria")
+    List<Funko> findAll();
+
+    @Override
+    @EntityGraph(attributePaths = "categoria")
     Optional<Funko> findById(Long id);
+
+    @EntityGraph(attributePaths = "categoria")
     Optional<Funko> findByNombre(String nombre);
-}
\ No newline at end of file
+
+    @Query(SELECT_RESUMEN + "where f.id > :id order by f.id asc")
+    List<FunkoResumenDto> findResumenByIdGreaterThan(Long id, Limit limit);
+
+    @Query(SELECT_RESUMEN + "where f.id < :id order by f.id desc")
+    List<FunkoResumenDto> findResumenByIdLessThan(Long id, Limit limit);
+
+    @Query(SELECT_RESUMEN + "where (f.updatedAt > :since or (f.updatedAt = :since and f.id > :afterId)) and f.updatedAt <= :hasta order by f.updatedAt, f.id")
+    List<FunkoResumenDto> findCambios(LocalDateTime since, Long afterId, LocalDateTime hasta, Limit limit);
+
+    @Query("select f.nombre from Funko f where f.nombre in :nombres")
+    Set<String> findNombresIn(Collection<String> nombres);
+
+    @Modifying
+    @Query("update Funko f set f.updatedAt = :updatedAt where f.nombre in :nombres")
+    int updateUpdatedAtByNombreIn(Collection<String> nombres, LocalDateTime updatedAt);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(SELECT_RESUMEN + "order by f.id")
+    Stream<FunkoResumenDto> streamAllResumen();
+}
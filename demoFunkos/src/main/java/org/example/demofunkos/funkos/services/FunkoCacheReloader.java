@@ -0,0 +1,28 @@
+package org.example.demofunkos.funkos.services;
+
+import org.example.demofunkos.cache.config.CacheReloader;
+import org.example.demofunkos.funkos.repositories.FunkoRepository;
+import org.springframework.stereotype.Component;
+
+@Component
+public class FunkoCacheReloader implements CacheReloader {
+    private final FunkoRepository repository;
+
+    public FunkoCacheReloader(FunkoRepository repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    public String cacheName() {
+        return FunkoServiceImpl.CACHE;
+    }
+
+    @Override
+    public Object reload(Object key) {
+        try {
+            return repository.findById(Long.valueOf(key.toString())).orElse(null);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package org.example.demofunkos.funkos.services;
+
+import org.example.demofunkos.funkos.dto.FunkoDto;
+import org.example.demofunkos.funkos.dto.FunkoImportResultDto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+public interface FunkoImportService {
+    FunkoImportResultDto importAll(List<FunkoDto> funkos);
+    FunkoImportResultDto importFrom(InputStream json) throws IOException;
+}
@@ -0,0 +1,154 @@
+package org.example.demofunkos.funkos.services;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.example.demofunkos.cache.services.JsonSnapshot;
+import org.example.demofunkos.categoria.models.Categoria;
+import org.example.demofunkos.categoria.services.CategoriaService;
+import org.example.demofunkos.funkos.dto.FunkoDto;
+import org.example.demofunkos.funkos.dto.FunkoImportErrorDto;
+import org.example.demofunkos.funkos.dto.FunkoImportResultDto;
+import org.example.demofunkos.funkos.repositories.FunkoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+public class FunkoImportServiceImpl implements FunkoImportService {
+    private static final String INSERT_SQL =
+            "INSERT INTO funkos (nombre, precio, categoria, created_at, updated_at) VALUES (?, ?, ?, ?, ?)";
+    private static final int NOMBRES_CHUNK = 1000;
+
+    private final FunkoRepository repository;
+    private final CategoriaService categoriaService;
+    private final JdbcTemplate jdbcTemplate;
+    private final Validator beanValidator;
+    private final ObjectMapper objectMapper;
+    private final JsonSnapshot funkosSnapshot;
+    private final int batchSize;
+
+    @Autowired
+    public FunkoImportServiceImpl(FunkoRepository repository, CategoriaService categoriaService, JdbcTemplate jdbcTemplate,
+                                  Validator beanValidator, ObjectMapper objectMapper,
+                                  @Qualifier("funkosSnapshot") JsonSnapshot funkosSnapshot,
+                                  @Value("${funkos.import.batch-size:500}") int batchSize) {
+        this.repository = repository;
+        this.categoriaService = categoriaService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.beanValidator = beanValidator;
+        this.objectMapper = objectMapper;
+        this.funkosSnapshot = funkosSnapshot;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public FunkoImportResultDto importFrom(InputStream json) throws IOException {
+        List<FunkoDto> funkos = objectMapper.readerFor(new TypeReference<List<FunkoDto>>() {})
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .readValue(json);
+        return importAll(funkos);
+    }
+
+    // La importacion no publica notificaciones ni eventos en el outbox: decenas de miles de CREATE colapsarian
+    // las colas de los clientes WebSocket. Las filas importadas llevan updatedAt del momento del commit,
+    // asi que los clientes las reciben al consultar GET /funkos/changes como cualquier otro cambio
+    @Override
+    @Transactional
+    public FunkoImportResultDto importAll(List<FunkoDto> funkos) {
+        long start = System.nanoTime();
+        List<FunkoImportErrorDto> errores = new ArrayList<>();
+
+        Map<String, Categoria> categorias = categoriaService.getAll().stream()
+                .collect(Collectors.toMap(c -> c.getNombre().toUpperCase(), Function.identity(), (a, b) -> a));
+        Set<String> existentes = findExistingNombres(funkos);
+        Set<String> vistos = new HashSet<>();
+
+        List<Object[]> filas = new ArrayList<>(funkos.size());
+        var now = LocalDateTime.now();
+        for (int i = 0; i < funkos.size(); i++) {
+            FunkoDto dto = funkos.get(i);
+            String error = validate(dto, categorias, existentes, vistos);
+            if (error != null) {
+                errores.add(new FunkoImportErrorDto(i, dto == null ? null : dto.getNombre(), error));
+                continue;
+            }
+            var categoria = categorias.get(dto.getCategoria().toUpperCase());
+            filas.add(new Object[]{dto.getNombre(), dto.getPrecio(), categoria.getId(), now, now});
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_SQL, filas, batchSize, (ps, fila) -> {
+            for (int col = 0; col < fila.length; col++) {
+                ps.setObject(col + 1, fila[col]);
+            }
+        });
+        if (!filas.isEmpty()) {
+            marcarAlConfirmar(filas);
+            funkosSnapshot.invalidate();
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+        double filasPorSegundo = elapsedNanos == 0 ? 0 : filas.size() / (elapsedNanos / 1_000_000_000.0);
+        log.info("Importados " + filas.size() + " de " + funkos.size() + " funkos a " + Math.round(filasPorSegundo) + " filas/s");
+        return new FunkoImportResultDto(funkos.size(), filas.size(), errores, elapsedNanos / 1_000_000, filasPorSegundo);
+    }
+
+    // Los lotes pueden tardar mas que funkos.cambios.commit-lag: con la marca del principio las filas quedarian por
+    // detras del cursor de /funkos/changes al confirmarse, asi que se marcan de nuevo justo antes del commit.
+    // Los nombres son unicos, ya se ha comprobado al validar
+    private void marcarAlConfirmar(List<Object[]> filas) {
+        List<String> nombres = filas.stream().map(fila -> (String) fila[0]).toList();
+        var ahora = LocalDateTime.now();
+        for (int i = 0; i < nombres.size(); i += NOMBRES_CHUNK) {
+            repository.updateUpdatedAtByNombreIn(nombres.subList(i, Math.min(i + NOMBRES_CHUNK, nombres.size())), ahora);
+        }
+    }
+
+    private String validate(FunkoDto dto, Map<String, Categoria> categorias, Set<String> existentes, Set<String> vistos) {
+        if (dto == null) {
+            return "El funko no puede ser nulo";
+        }
+        Set<ConstraintViolation<FunkoDto>> violations = beanValidator.validate(dto);
+        if (!violations.isEmpty()) {
+            return violations.stream()
+                    .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", "));
+        }
+        if (!categorias.containsKey(dto.getCategoria().toUpperCase())) {
+            return "La categoria " + dto.getCategoria() + " no existe";
+        }
+        if (existentes.contains(dto.getNombre()) || !vistos.add(dto.getNombre())) {
+            return "El nombre del funko ya existe";
+        }
+        return null;
+    }
+
+    private Set<String> findExistingNombres(List<FunkoDto> funkos) {
+        List<String> nombres = funkos.stream()
+                .filter(Objects::nonNull)
+                .map(FunkoDto::getNombre)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        Set<String> existentes = new HashSet<>();
+        for (int i = 0; i < nombres.size(); i += NOMBRES_CHUNK) {
+            existentes.addAll(repository.findNombresIn(nombres.subList(i, Math.min(i + NOMBRES_CHUNK, nombres.size()))));
+        }
+        return existentes;
+    }
+}
@@ -1,15 +1,23 @@
 package org.example.demofunkos.funkos.services;
 
 import org.example.demofunkos.categoria.models.Categoria;
+import org.example.demofunkos.funkos.dto.FunkoCambiosDto;
 import org.example.demofunkos.funkos.dto.FunkoDto;
+import org.example.demofunkos.funkos.dto.FunkoPageDto;
 import org.example.demofunkos.funkos.models.Funko;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Service
 public interface FunkoService {
     List<Funko> getAll();
+    FunkoPageDto getPage(String cursor, int size, String sort);
+    long exportAll(OutputStream out) throws IOException;
+    FunkoCambiosDto getCambios(LocalDateTime since, Long afterId, int size);
     Funko getById(String id);
     Funko getByNombre(String nombre);
     Funko save(FunkoDto funkoDto);
@@ -1,54 +1,101 @@
 package org.example.demofunkos.funkos.services;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import lombok.extern.slf4j.Slf4j;
+import org.example.demofunkos.cache.services.JsonSnapshot;
 import org.example.demofunkos.categoria.services.CategoriaService;
+import org.example.demofunkos.funkos.dto.FunkoCambiosDto;
 import org.example.demofunkos.funkos.dto.FunkoDto;
+import org.example.demofunkos.funkos.dto.FunkoPageDto;
+import org.example.demofunkos.funkos.dto.FunkoResumenDto;
 import org.example.demofunkos.funkos.mappers.FunkoMapper;
 import org.example.demofunkos.funkos.models.Funko;
+import org.example.demofunkos.funkos.models.FunkoBorrado;
+import org.example.demofunkos.funkos.repositories.FunkoBorradoRepository;
 import org.example.demofunkos.funkos.repositories.FunkoRepository;
 import org.example.demofunkos.funkos.validators.FunkoValidator;
-import org.example.demofunkos.notifications.config.WebSocketConfig;
-import org.example.demofunkos.notifications.config.WebSocketHandler;
 import org.example.demofunkos.notifications.dto.NotificacionDto;
 import org.example.demofunkos.notifications.mappers.NotificacionMapper;
 import org.example.demofunkos.notifications.models.Notificacion;
+import org.example.demofunkos.notifications.services.OutboxService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
-@CacheConfig(cacheNames = {"funkos"})
+@CacheConfig(cacheNames = {FunkoServiceImpl.CACHE})
 public class FunkoServiceImpl implements FunkoService{
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_CAMBIOS_SIZE = 1000;
+    private static final String SORT_ASC = "asc";
+    private static final String SORT_DESC = "desc";
+    public static final String CACHE = "funkos";
+    public static final String CACHE_POR_NOMBRE = "funkosPorNombre";
+
     private final FunkoRepository repository;
+    private final FunkoBorradoRepository borradoRepository;
     private final FunkoMapper mapper;
     private final CategoriaService categoriaService;
-    private final WebSocketConfig webSocketConfig;
-    private WebSocketHandler webSocketHandler;
+    private final OutboxService outboxService;
     private final NotificacionMapper notificacionMapper;
     private ObjectMapper objectMapper;
     private FunkoValidator validator;
+    private final CacheManager cacheManager;
+    private final JsonSnapshot funkosSnapshot;
+
+    @Value("${funkos.export.flush-rows:500}")
+    private int exportFlushRows = 500;
+
+    // Los borrados mas antiguos se purgan: un cliente que pide cambios desde antes tiene que resincronizar
+    @Value("${funkos.cambios.retention:7d}")
+    private Duration cambiosRetention = Duration.ofDays(7);
+
+    // updatedAt lo pone la aplicacion antes de confirmar, asi que una fila puede hacerse visible con una
+    // marca anterior a otras ya servidas. El feed no sirve lo de los ultimos commit-lag, que tiene que ser
+    // mayor que la transaccion de escritura mas larga para no perder cambios
+    @Value("${funkos.cambios.commit-lag:5s}")
+    private Duration cambiosCommitLag = Duration.ofSeconds(5);
 
     @Autowired
-    public FunkoServiceImpl(FunkoRepository repository, FunkoMapper mapper, CategoriaService categoriaService, WebSocketConfig webSocketConfig, NotificacionMapper notificacionMapper, FunkoValidator validator) {
+    public FunkoServiceImpl(FunkoRepository repository, FunkoBorradoRepository borradoRepository, FunkoMapper mapper, CategoriaService categoriaService, OutboxService outboxService, NotificacionMapper notificacionMapper, FunkoValidator validator, CacheManager cacheManager, @Qualifier("funkosSnapshot") JsonSnapshot funkosSnapshot) {
         this.repository = repository;
+        this.borradoRepository = borradoRepository;
         this.mapper = mapper;
         this.categoriaService = categoriaService;
-        this.webSocketConfig = webSocketConfig;
-        webSocketHandler = webSocketConfig.webSocketFunkosHandler();
-        objectMapper = new ObjectMapper();
+        this.outboxService = outboxService;
+        objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
         this.notificacionMapper = notificacionMapper;
         this.validator = validator;
+        this.cacheManager = cacheManager;
+        this.funkosSnapshot = funkosSnapshot;
     }
 
     @Override
@@ -56,7 +103,101 @@ public class FunkoServiceImpl implements FunkoService{
         return repository.findAll();
     }
 
-    @Cacheable
+    @Override
+    public FunkoPageDto getPage(String cursor, int size, String sort) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El tamaño de pagina debe estar entre 1 y " + MAX_PAGE_SIZE);
+        }
+        if (!SORT_ASC.equals(sort) && !SORT_DESC.equals(sort)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El orden debe ser " + SORT_ASC + " o " + SORT_DESC);
+        }
+
+        boolean asc = SORT_ASC.equals(sort);
+        Long lastId = cursor == null ? (asc ? Long.MIN_VALUE : Long.MAX_VALUE) : decodeCursor(cursor, sort);
+
+        // Se pide un elemento de mas para saber si hay pagina siguiente sin hacer un count
+        var limit = Limit.of(size + 1);
+        var rows = asc
+                ? repository.findResumenByIdGreaterThan(lastId, limit)
+                : repository.findResumenByIdLessThan(lastId, limit);
+
+        boolean hasNext = rows.size() > size;
+        var content = hasNext ? rows.subList(0, size) : rows;
+        String nextCursor = hasNext ? encodeCursor(content.get(content.size() - 1).id(), sort) : null;
+        return new FunkoPageDto(content, size, sort, nextCursor, hasNext);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long exportAll(OutputStream out) throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(FunkoResumenDto.class);
+        long count = 0;
+        try (Stream<FunkoResumenDto> rows = repository.streamAllResumen()) {
+            var iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                out.write(writer.writeValueAsBytes(iterator.next()));
+                out.write('\n');
+                if (++count % exportFlushRows == 0) {
+                    out.flush();
+                }
+            }
+        }
+        out.flush();
+        log.info("Exportados " + count + " funkos");
+        return count;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public FunkoCambiosDto getCambios(LocalDateTime since, Long afterId, int size) {
+        if (since == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El parametro since es obligatorio");
+        }
+        if (size < 1 || size > MAX_CAMBIOS_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El tamaño debe estar entre 1 y " + MAX_CAMBIOS_SIZE);
+        }
+
+        LocalDateTime ahora = LocalDateTime.now();
+        if (since.isBefore(ahora.minus(cambiosRetention))) {
+            throw new ResponseStatusException(HttpStatus.GONE, "Los borrados anteriores a " + cambiosRetention + " ya no se conservan, hay que resincronizar");
+        }
+
+        // Cambios y borrados se piden con el mismo keyset y se mezclan en orden, el cursor es el ultimo de ambos
+        long desdeId = afterId == null ? Long.MAX_VALUE : afterId;
+        LocalDateTime hasta = ahora.minus(cambiosCommitLag);
+        var rows = repository.findCambios(since, desdeId, hasta, Limit.of(size + 1));
+        var tumbas = borradoRepository.findBorrados(since, desdeId, hasta, Limit.of(size + 1));
+
+        var cambios = new ArrayList<FunkoResumenDto>();
+        var borrados = new ArrayList<Long>();
+        LocalDateTime ultimaMarca = since;
+        Long ultimoId = afterId;
+        int i = 0;
+        int j = 0;
+        while (cambios.size() + borrados.size() < size && (i < rows.size() || j < tumbas.size())) {
+            boolean cambio = j == tumbas.size() || (i < rows.size() && antes(rows.get(i), tumbas.get(j)));
+            if (cambio) {
+                var row = rows.get(i++);
+                cambios.add(row);
+                ultimaMarca = row.updatedAt();
+                ultimoId = row.id();
+            } else {
+                var tumba = tumbas.get(j++);
+                borrados.add(tumba.getId());
+                ultimaMarca = tumba.getDeletedAt();
+                ultimoId = tumba.getId();
+            }
+        }
+        boolean hasMore = i < rows.size() || j < tumbas.size();
+        return new FunkoCambiosDto(cambios, borrados, ultimaMarca, ultimoId, hasMore);
+    }
+
+    private static boolean antes(FunkoResumenDto row, FunkoBorrado tumba) {
+        int orden = row.updatedAt().compareTo(tumba.getDeletedAt());
+        return orden < 0 || (orden == 0 && row.id() < tumba.getId());
+    }
+
+    @Cacheable(key = "#id")
     @Override
     public Funko getById(String id) {
         if (!validator.isIdValid(String.valueOf(id))) {
@@ -67,6 +208,7 @@ public class FunkoServiceImpl implements FunkoService{
         );
     }
 
+    @Cacheable(cacheNames = CACHE_POR_NOMBRE, key = "#nombre")
     @Override
     public Funko getByNombre(String nombre) {
         return repository.findByNombre(nombre).orElseThrow(
@@ -74,20 +216,29 @@ public class FunkoServiceImpl implements FunkoService{
         );
     }
 
-    @CachePut
+    @Caching(put = {
+            @CachePut(key = "#result.id.toString()"),
+            @CachePut(cacheNames = CACHE_POR_NOMBRE, key = "#result.nombre")
+    })
     @Override
+    @Transactional
     public Funko save(FunkoDto funkoDto) {
         var categoria = categoriaService.getByNombre(funkoDto.getCategoria().toUpperCase());
         if (!validator.isNameUnique(funkoDto.getNombre())) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El nombre del funko ya existe");
         }
         var funkoSaved = repository.save(mapper.toFunko(funkoDto, categoria));
-        onChange(Notificacion.Tipo.CREATE, funkoSaved);
+        funkosSnapshot.invalidate();
+        onChange(Notificacion.Tipo.CREATE, notificacionMapper.toNotificationDto(funkoSaved));
         return funkoSaved;
     }
 
-    @CachePut
+    @Caching(put = {
+            @CachePut(key = "#id"),
+            @CachePut(cacheNames = CACHE_POR_NOMBRE, key = "#result.nombre")
+    })
     @Override
+    @Transactional
     public Funko update(String id, FunkoDto funkoDto) {
         if (!validator.isIdValid(String.valueOf(id))) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El id no es valido. Debe ser de tipo Long");
@@ -100,16 +251,24 @@ public class FunkoServiceImpl implements FunkoService{
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El nombre del funko ya existe");
         }
         var categoria = categoriaService.getByNombre(funkoDto.getCategoria());
+        var anterior = notificacionMapper.toNotificationDto(res);
+        evictNombre(res.getNombre());
         res.setNombre(funkoDto.getNombre());
         res.setPrecio(funkoDto.getPrecio());
         res.setCategoria(categoria);
+        res.setUpdatedAt(LocalDateTime.now());
         var funkoUpdated = repository.save(res);
-        onChange(Notificacion.Tipo.UPDATE, funkoUpdated);
+        funkosSnapshot.invalidate();
+        onChange(Notificacion.Tipo.UPDATE, notificacionMapper.toNotificationDto(funkoUpdated, anterior));
         return funkoUpdated;
     }
 
-    @CacheEvict
+    @Caching(evict = {
+            @CacheEvict(key = "#id"),
+            @CacheEvict(cacheNames = CACHE_POR_NOMBRE, key = "#result.nombre")
+    })
     @Override
+    @Transactional
     public Funko delete(String id) {
         if (!validator.isIdValid(String.valueOf(id))) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El id no es valido. Debe ser de tipo Long");
@@ -119,43 +278,49 @@ public class FunkoServiceImpl implements FunkoService{
             () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "El Funko con id " + id + " no se ha encontrado.")
         );
         repository.deleteById(Long.valueOf(id));
-        onChange(Notificacion.Tipo.DELETE, funko);
+        var ahora = LocalDateTime.now();
+        borradoRepository.save(new FunkoBorrado(funko.getId(), ahora));
+        borradoRepository.deleteAnterioresA(ahora.minus(cambiosRetention));
+        funkosSnapshot.invalidate();
+        onChange(Notificacion.Tipo.DELETE, notificacionMapper.toNotificationDto(funko));
         return funko;
     }
 
-    void onChange(Notificacion.Tipo tipo, Funko data) {
+    void onChange(Notificacion.Tipo tipo, NotificacionDto data) {
         log.debug("Servicio de funkos onChange con tipo: " + tipo + " y datos: " + data);
 
-        if (webSocketHandler == null) {
-            log.warn("No se ha podido enviar la notificación a los clientes ws, no se ha encontrado el servicio");
-            webSocketHandler = this.webSocketConfig.webSocketFunkosHandler();
-        }
+        Notificacion<NotificacionDto> notificacion = new Notificacion<>(
+                "FUNKOS",
+                tipo,
+                data,
+                LocalDateTime.now().toString()
+        );
 
-        try {
-            Notificacion<NotificacionDto> notificacion = new Notificacion<>(
-                    "FUNKOS",
-                    tipo,
-                    notificacionMapper.toNotificationDto(data),
-                    LocalDateTime.now().toString()
-            );
-
-            String json = objectMapper.writeValueAsString((notificacion));
-
-            log.info("Enviando mensaje a los clientes ws");
-            Thread senderThread = new Thread(() -> {
-                try {
-                    webSocketHandler.sendMessage(json);
-                } catch (Exception e) {
-                    log.error("Error al enviar el mensaje a través del servicio WebSocket", e);
-                }
-            });
-            senderThread.start();
-        } catch (JsonProcessingException e) {
-            log.error("Error al convertir la notificación a JSON", e);
+        outboxService.registrar(notificacion);
+    }
+
+    private void evictNombre(String nombre) {
+        Cache cache = cacheManager.getCache(CACHE_POR_NOMBRE);
+        if (cache != null && nombre != null) {
+            cache.evict(nombre);
         }
     }
 
-    public void setWebSocketHandler(WebSocketHandler webSocketHandler) {
-        this.webSocketHandler = webSocketHandler;
+    private String encodeCursor(Long id, String sort) {
+        String raw = sort + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Long decodeCursor(String cursor, String sort) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            if (parts.length != 2 || !parts[0].equals(sort)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El cursor no es valido para el orden " + sort);
+            }
+            return Long.valueOf(parts[1]);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El cursor no es valido");
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,127 @@
+package org.example.demofunkos.notifications.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+@Slf4j
+public class SessionSender {
+    public enum OverflowPolicy {DROP_OLDEST, CLOSE}
+
+    // Marca para despertar al escritor cuando hay que parar; se compara por identidad
+    private static final WebSocketMessage<?> FIN = new TextMessage("");
+
+    private final WebSocketSession session;
+    private final BlockingQueue<WebSocketMessage<?>> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicReference<CloseStatus> cierre = new AtomicReference<>();
+    private volatile boolean closed;
+
+    private SessionSender(WebSocketSession session, int capacity, OverflowPolicy overflowPolicy) {
+        this.session = session;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    // El hilo escritor se arranca cuando el objeto ya esta construido, no desde el constructor
+    public static SessionSender start(WebSocketSession session, int capacity, OverflowPolicy overflowPolicy) {
+        var sender = new SessionSender(session, capacity, overflowPolicy);
+        Thread.ofVirtual()
+                .name("ws-sender-" + session.getId())
+                .start(sender::drain);
+        return sender;
+    }
+
+    public boolean send(WebSocketMessage<?> message) {
+        if (closed) {
+            return false;
+        }
+        if (queue.offer(message)) {
+            return true;
+        }
+
+        if (overflowPolicy == OverflowPolicy.CLOSE) {
+            log.warn("Cola de envio llena para la sesion " + session.getId() + ", se cierra la conexion");
+            close(CloseStatus.SESSION_NOT_RELIABLE);
+            return false;
+        }
+
+        // DROP_OLDEST: el cliente lento pierde los mensajes mas antiguos y recibe los mas recientes
+        offerDroppingOldest(message);
+        return true;
+    }
+
+    private void offerDroppingOldest(WebSocketMessage<?> message) {
+        while (!queue.offer(message)) {
+            if (queue.poll() != null && message != FIN) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    // Solo este hilo usa la sesion, asi el cierre nunca coincide con un sendMessage en curso
+    private void drain() {
+        try {
+            while (!closed) {
+                WebSocketMessage<?> message = queue.take();
+                if (message != FIN && !closed && session.isOpen()) {
+                    session.sendMessage(message);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | IllegalStateException e) {
+            log.warn("Error enviando a la sesion " + session.getId() + ", se cierra la conexion", e);
+            cierre.compareAndSet(null, CloseStatus.SESSION_NOT_RELIABLE);
+            closed = true;
+        }
+        cerrarSesion();
+    }
+
+    private void cerrarSesion() {
+        CloseStatus status = cierre.get();
+        if (status == null) {
+            return;
+        }
+        try {
+            if (session.isOpen()) {
+                session.close(status);
+            }
+        } catch (IOException e) {
+            log.warn("No se ha podido cerrar la sesion " + session.getId(), e);
+        }
+    }
+
+    // El cierre lo hace el hilo escritor en cuanto termina el envio que tenga en curso
+    public void close(CloseStatus status) {
+        cierre.compareAndSet(null, status);
+        stop();
+    }
+
+    public void stop() {
+        closed = true;
+        queue.clear();
+        offerDroppingOldest(FIN);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+}
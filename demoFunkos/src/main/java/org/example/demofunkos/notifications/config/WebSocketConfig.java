@@ -1,5 +1,6 @@
 package org.example.demofunkos.notifications.config;
 
+import org.example.demofunkos.notifications.services.NotificacionLog;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -13,6 +14,15 @@ public class WebSocketConfig implements WebSocketConfigurer {
     @Value("${api.version}")
     private String apiVersion;
 
+    @Value("${websocket.send-queue.capacity:256}")
+    private int sendQueueCapacity;
+
+    @Value("${websocket.send-queue.overflow:CLOSE}")
+    private SessionSender.OverflowPolicy overflowPolicy;
+
+    @Value("${notificaciones.log.capacity:10000}")
+    private int logCapacity;
+
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(webSocketFunkosHandler(), "/ws/" + apiVersion + "/funkos");
@@ -20,6 +30,11 @@ public class WebSocketConfig implements WebSocketConfigurer {
 
     @Bean
     public WebSocketHandler webSocketFunkosHandler() {
-        return new WebSocketHandler("Funkos");
+        return new WebSocketHandler("Funkos", sendQueueCapacity, overflowPolicy, notificacionLog());
+    }
+
+    @Bean
+    public NotificacionLog notificacionLog() {
+        return new NotificacionLog(logCapacity);
     }
 }
\ No newline at end of file
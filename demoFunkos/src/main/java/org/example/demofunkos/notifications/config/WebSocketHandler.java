@@ -1,54 +1,344 @@
 package org.example.demofunkos.notifications.config;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import lombok.extern.slf4j.Slf4j;
+import org.example.demofunkos.notifications.dto.NotificacionDto;
+import org.example.demofunkos.notifications.models.Notificacion;
+import org.example.demofunkos.notifications.models.Suscripcion;
+import org.example.demofunkos.notifications.services.NotificacionLog;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import java.io.IOException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 public class WebSocketHandler extends TextWebSocketHandler implements SubProtocolCapable, WebSocketSender {
+    public static final String PROTOCOLO_JSON = "funkos.json";
+    public static final String PROTOCOLO_CBOR = "funkos.cbor";
+    // CBOR con referencias a cadenas repetidas (tags 256/25, extension de CBOR que no todos los decodificadores
+    // entienden): solo lo recibe quien lo pide expresamente con este subprotocolo
+    public static final String PROTOCOLO_CBOR_STRINGREF = "funkos.cbor.stringref";
+
+    private enum Formato {JSON, CBOR, CBOR_STRINGREF}
+
+    private record Suscriptor(SessionSender sender, Suscripcion suscripcion, Formato formato) {}
+
+    // Codifica el contenido en JSON o CBOR la primera vez que una sesion lo necesita
+    private final class Trama {
+        private final Object contenido;
+        private final Callable<byte[]> json;
+        private TextMessage texto;
+        private byte[] cbor;
+        private byte[] cborStringref;
+
+        private Trama(Object contenido, Callable<byte[]> json) {
+            this.contenido = contenido;
+            this.json = json;
+        }
+
+        private Trama(Object contenido, TextMessage texto) {
+            this(contenido, (Callable<byte[]>) null);
+            this.texto = texto;
+        }
+
+        private WebSocketMessage<?> para(Suscriptor suscriptor) throws Exception {
+            switch (suscriptor.formato()) {
+                case JSON -> {
+                    if (texto == null) {
+                        texto = new TextMessage(json.call());
+                    }
+                    return texto;
+                }
+                case CBOR -> {
+                    if (cbor == null) {
+                        cbor = cborMapper.writeValueAsBytes(contenido);
+                    }
+                    // Los bytes se comparten pero cada sesion necesita su ByteBuffer, el envio avanza su posicion
+                    return new BinaryMessage(cbor);
+                }
+                default -> {
+                    if (cborStringref == null) {
+                        cborStringref = cborStringrefMapper.writeValueAsBytes(contenido);
+                    }
+                    return new BinaryMessage(cborStringref);
+                }
+            }
+        }
+    }
+
     private final String entity;
+    private final int queueCapacity;
+    private final SessionSender.OverflowPolicy overflowPolicy;
+    private final NotificacionLog notificacionLog;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    private final ObjectMapper cborMapper = CBORMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final ObjectMapper cborStringrefMapper = CBORMapper.builder()
+            .enable(CBORGenerator.Feature.STRINGREF)
+            .build()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
 
-    private final Set<WebSocketSession> sessions = new CopyOnWriteArraySet<>();
+    private final Map<String, Suscriptor> suscriptores = new ConcurrentHashMap<>();
+    // Indice de sesiones por categoria; las que no filtran por categoria van aparte
+    private final Map<String, Set<String>> porCategoria = new ConcurrentHashMap<>();
+    private final Set<String> sinCategoria = ConcurrentHashMap.newKeySet();
 
-    public WebSocketHandler(String entity) {
+    public WebSocketHandler(String entity, int queueCapacity, SessionSender.OverflowPolicy overflowPolicy, NotificacionLog notificacionLog) {
         this.entity = entity;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.notificacionLog = notificacionLog;
     }
 
     @Override
     public List<String> getSubProtocols() {
-        return List.of();
+        return List.of(PROTOCOLO_CBOR_STRINGREF, PROTOCOLO_CBOR, PROTOCOLO_JSON);
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws IOException {
-        sessions.add(session);
+        Suscripcion suscripcion;
+        String desde;
+        String epoch = null;
+        long seq = 0;
+        try {
+            MultiValueMap<String, String> params = session.getUri() == null
+                    ? new LinkedMultiValueMap<>()
+                    : UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams();
+            suscripcion = Suscripcion.of(params);
+            // El token es epoch:seq; un numero suelto no dice de que ejecucion es y se trata como de otra
+            desde = params.getFirst("desde");
+            if (desde != null) {
+                int separador = desde.lastIndexOf(':');
+                epoch = separador < 0 ? null : desde.substring(0, separador);
+                seq = Long.parseLong(desde.substring(separador + 1));
+            }
+        } catch (IllegalArgumentException e) {
+            log.warn("Suscripcion no valida en la conexion " + session.getId() + ": " + e.getMessage());
+            session.close(CloseStatus.BAD_DATA.withReason("Suscripcion no valida"));
+            return;
+        }
+
+        var sender = SessionSender.start(session, queueCapacity, overflowPolicy);
+        var suscriptor = new Suscriptor(sender, suscripcion, formato(session.getAcceptedProtocol()));
         log.info("Nueva conexión: " + entity);
-        TextMessage message = new TextMessage("Se ha conectado " + entity);
-        session.sendMessage(message);
+        if (desde == null) {
+            suscribir(session.getId(), suscriptor);
+            sender.send(new TextMessage("Se ha conectado " + entity));
+            return;
+        }
+
+        // Con el log bloqueado ninguna notificacion puede colarse entre la repeticion y el directo
+        notificacionLog.reanudar(epoch, seq, pendientes -> {
+            suscribir(session.getId(), suscriptor);
+            sender.send(new TextMessage("Se ha conectado " + entity));
+            pendientes.ifPresentOrElse(
+                    p -> repetir(suscriptor, p),
+                    () -> resincronizar(suscriptor, desde)
+            );
+            return null;
+        });
+    }
+
+    private static Formato formato(String protocolo) {
+        if (PROTOCOLO_CBOR_STRINGREF.equals(protocolo)) {
+            return Formato.CBOR_STRINGREF;
+        }
+        return PROTOCOLO_CBOR.equals(protocolo) ? Formato.CBOR : Formato.JSON;
+    }
+
+    private void repetir(Suscriptor suscriptor, List<Notificacion<?>> pendientes) {
+        var coincidencias = pendientes.stream()
+                .filter(n -> suscriptor.suscripcion().matches(n))
+                .toList();
+        if (coincidencias.isEmpty()) {
+            return;
+        }
+        try {
+            send(suscriptor, new Trama(coincidencias, () -> objectMapper.writeValueAsBytes(coincidencias)).para(suscriptor));
+        } catch (Exception e) {
+            log.error("Error al convertir las notificaciones a repetir a JSON", e);
+            resincronizar(suscriptor, null);
+        }
+    }
+
+    private void resincronizar(Suscriptor suscriptor, String desde) {
+        log.info("No se puede reanudar desde " + desde + ", se pide al cliente que resincronice");
+        send(suscriptor, new TextMessage("{\"type\":\"RESYNC\",\"epoch\":\"" + notificacionLog.getEpoch()
+                + "\",\"seq\":" + notificacionLog.getUltimaSeq() + "}"));
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        actualizarSuscripcion(session, objectMapper, message.asBytes());
+    }
+
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        var payload = message.getPayload();
+        var bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        actualizarSuscripcion(session, cborMapper, bytes);
+    }
+
+    private void actualizarSuscripcion(WebSocketSession session, ObjectMapper mapper, byte[] payload) {
+        var actual = suscriptores.get(session.getId());
+        if (actual == null) {
+            return;
+        }
+        try {
+            var suscripcion = mapper.readValue(payload, Suscripcion.class);
+            suscribir(session.getId(), new Suscriptor(actual.sender(), suscripcion, actual.formato()));
+            log.debug("Suscripcion actualizada para la sesion " + session.getId() + ": " + suscripcion);
+        } catch (IOException | IllegalArgumentException e) {
+            actual.sender().send(new TextMessage("Suscripcion no valida: " + e.getMessage()));
+        }
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws IOException{
-        sessions.remove(session);
+        var suscriptor = desuscribir(session.getId());
+        if (suscriptor != null) {
+            suscriptor.sender().stop();
+        }
         log.info("Conexión cerrada: " + entity);
-        TextMessage message = new TextMessage("Se ha desconectado " + entity);
-        session.sendMessage(message);
     }
 
     @Override
-    public void sendMessage(String message) throws IOException {
-        for (WebSocketSession session : sessions){
-            if(session.isOpen()){
-                session.sendMessage(new TextMessage(message));
+    public void broadcast(Notificacion<?> notificacion, byte[] utf8Payload) {
+        var trama = new Trama(notificacion, new TextMessage(utf8Payload));
+        // Una sesion esta en sinCategoria o en el indice de sus categorias, nunca en ambos
+        broadcast(sinCategoria, Set.of(), notificacion, trama);
+        if (notificacion.data() instanceof NotificacionDto dto) {
+            var sesiones = sesiones(dto.categoria());
+            broadcast(sesiones, Set.of(), notificacion, trama);
+            // Si cambia de categoria tambien se avisa a quien seguia la anterior, sin repetir a quien sigue las dos
+            broadcast(sesiones(dto.categoriaAnterior()), sesiones, notificacion, trama);
+        }
+    }
+
+    private Set<String> sesiones(String categoria) {
+        return categoria == null ? Set.of() : porCategoria.getOrDefault(categoria.toUpperCase(Locale.ROOT), Set.of());
+    }
+
+    private void broadcast(Set<String> sesiones, Set<String> excluidas, Notificacion<?> notificacion, Trama trama) {
+        for (String sessionId : sesiones) {
+            var suscriptor = suscriptores.get(sessionId);
+            if (suscriptor != null && !excluidas.contains(sessionId) && suscriptor.suscripcion().matches(notificacion)) {
+                send(suscriptor, trama);
+            }
+        }
+    }
+
+    @Override
+    public void broadcastBatch(List<Notificacion<?>> notificaciones, FrameEncoder encoder) {
+        // Las sesiones que coinciden con el mismo subconjunto del lote comparten la trama
+        Map<BitSet, Trama> tramas = new HashMap<>();
+        for (String sessionId : candidatos(notificaciones)) {
+            var suscriptor = suscriptores.get(sessionId);
+            if (suscriptor == null) {
+                continue;
+            }
+            var coincidencias = new BitSet(notificaciones.size());
+            for (int i = 0; i < notificaciones.size(); i++) {
+                if (suscriptor.suscripcion().matches(notificaciones.get(i))) {
+                    coincidencias.set(i);
+                }
+            }
+            if (coincidencias.isEmpty()) {
+                continue;
             }
+            var trama = tramas.get(coincidencias);
+            if (trama == null) {
+                var subconjunto = coincidencias.stream().<Notificacion<?>>mapToObj(notificaciones::get).toList();
+                trama = new Trama(subconjunto, () -> encoder.encode(subconjunto));
+                tramas.put(coincidencias, trama);
+            }
+            send(suscriptor, trama);
+        }
+    }
+
+    private static void send(Suscriptor suscriptor, WebSocketMessage<?> message) {
+        if (!suscriptor.sender().isClosed()) {
+            suscriptor.sender().send(message);
         }
     }
+
+    private static void send(Suscriptor suscriptor, Trama trama) {
+        try {
+            send(suscriptor, trama.para(suscriptor));
+        } catch (Exception e) {
+            log.error("Error al codificar la notificación para la sesion", e);
+        }
+    }
+
+    private Set<String> candidatos(List<Notificacion<?>> notificaciones) {
+        Set<String> candidatos = new HashSet<>(sinCategoria);
+        for (var notificacion : notificaciones) {
+            if (notificacion.data() instanceof NotificacionDto dto) {
+                candidatos.addAll(sesiones(dto.categoria()));
+                candidatos.addAll(sesiones(dto.categoriaAnterior()));
+            }
+        }
+        return candidatos;
+    }
+
+    private void suscribir(String sessionId, Suscriptor suscriptor) {
+        desuscribir(sessionId);
+        suscriptores.put(sessionId, suscriptor);
+        var categorias = suscriptor.suscripcion().categorias();
+        if (categorias.isEmpty()) {
+            sinCategoria.add(sessionId);
+        }
+        for (String categoria : categorias) {
+            porCategoria.computeIfAbsent(categoria, c -> ConcurrentHashMap.newKeySet()).add(sessionId);
+        }
+    }
+
+    private Suscriptor desuscribir(String sessionId) {
+        var suscriptor = suscriptores.remove(sessionId);
+        if (suscriptor != null) {
+            sinCategoria.remove(sessionId);
+            for (String categoria : suscriptor.suscripcion().categorias()) {
+                porCategoria.computeIfPresent(categoria, (c, sesiones) -> {
+                    sesiones.remove(sessionId);
+                    return sesiones.isEmpty() ? null : sesiones;
+                });
+            }
+        }
+        return suscriptor;
+    }
+
+    public int getSessionCount() {
+        return suscriptores.size();
+    }
 }
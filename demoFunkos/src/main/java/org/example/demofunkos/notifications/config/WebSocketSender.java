@@ -1,7 +1,17 @@
 package org.example.demofunkos.notifications.config;
 
+import org.example.demofunkos.notifications.models.Notificacion;
+
 import java.io.IOException;
+import java.util.List;
 
 public interface WebSocketSender {
-    void sendMessage(String message) throws IOException;
+    @FunctionalInterface
+    interface FrameEncoder {
+        byte[] encode(List<Notificacion<?>> notificaciones) throws IOException;
+    }
+
+    void broadcast(Notificacion<?> notificacion, byte[] utf8Payload) throws IOException;
+
+    void broadcastBatch(List<Notificacion<?>> notificaciones, FrameEncoder encoder) throws IOException;
 }
@@ -1,11 +1,44 @@
 package org.example.demofunkos.notifications.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Objects;
+
 public record NotificacionDto(
         Long id,
         String nombre,
         String categoria,
         Double precio,
         String createdAt,
-        String updatedAt
+        String updatedAt,
+        // Solo en las actualizaciones que cambian la categoria o el precio: quien filtraba por el valor anterior
+        // recibe el cambio y sabe que el funko ha dejado de coincidir con su suscripcion
+        @JsonInclude(JsonInclude.Include.NON_NULL) String categoriaAnterior,
+        @JsonInclude(JsonInclude.Include.NON_NULL) Double precioAnterior
 ) {
-}
\ No newline at end of file
+    public NotificacionDto(Long id, String nombre, String categoria, Double precio, String createdAt, String updatedAt) {
+        this(id, nombre, categoria, precio, createdAt, updatedAt, null, null);
+    }
+
+    public boolean tieneAnterior() {
+        return categoriaAnterior != null || precioAnterior != null;
+    }
+
+    // El estado antes de la actualizacion, con los campos que no cambiaron tal cual
+    public NotificacionDto anterior() {
+        return new NotificacionDto(id, nombre,
+                categoriaAnterior != null ? categoriaAnterior : categoria,
+                precioAnterior != null ? precioAnterior : precio,
+                createdAt, updatedAt);
+    }
+
+    public NotificacionDto conAnterior(NotificacionDto anterior) {
+        return new NotificacionDto(id, nombre, categoria, precio, createdAt, updatedAt,
+                Objects.equals(anterior.categoria(), categoria) ? null : anterior.categoria(),
+                Objects.equals(anterior.precio(), precio) ? null : anterior.precio());
+    }
+
+    public NotificacionDto sinAnterior() {
+        return tieneAnterior() ? new NotificacionDto(id, nombre, categoria, precio, createdAt, updatedAt) : this;
+    }
+}
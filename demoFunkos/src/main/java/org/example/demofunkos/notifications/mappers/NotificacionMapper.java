@@ -16,4 +16,10 @@ public class NotificacionMapper {
                 funko.getUpdatedAt().toString()
         );
     }
+
+    // Para las actualizaciones: anterior es el funko antes de modificarlo
+    public NotificacionDto toNotificationDto(Funko funko, NotificacionDto anterior) {
+        var dto = toNotificationDto(funko);
+        return anterior == null ? dto : dto.conAnterior(anterior);
+    }
 }
@@ -1,12 +1,25 @@
 package org.example.demofunkos.notifications.models;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 public record Notificacion<T>(
         String entity,
         Tipo type,
         T data,
-        String createdAt
+        String createdAt,
+        @JsonInclude(JsonInclude.Include.NON_NULL) Long seq,
+        @JsonInclude(JsonInclude.Include.NON_NULL) String epoch
 ) {
 
     public enum Tipo {CREATE, UPDATE, DELETE}
 
-}
\ No newline at end of file
+    public Notificacion(String entity, Tipo type, T data, String createdAt) {
+        this(entity, type, data, createdAt, null, null);
+    }
+
+    // El epoch identifica la ejecucion que numero la notificacion: el token de reanudacion es epoch:seq
+    public Notificacion<T> withSeq(String epoch, long seq) {
+        return new Notificacion<>(entity, type, data, createdAt, seq, epoch);
+    }
+
+}
@@ -0,0 +1,75 @@
+package org.example.demofunkos.notifications.models;
+
+import org.example.demofunkos.notifications.dto.NotificacionDto;
+import org.springframework.util.MultiValueMap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public record Suscripcion(
+        Set<String> categorias,
+        Set<Notificacion.Tipo> tipos,
+        Double precioMin,
+        Double precioMax
+) {
+    public static final Suscripcion TODAS = new Suscripcion(Set.of(), Set.of(), null, null);
+
+    public Suscripcion {
+        categorias = categorias == null ? Set.of() : categorias.stream()
+                .map(c -> c.trim().toUpperCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableSet());
+        tipos = tipos == null ? Set.of() : Set.copyOf(tipos);
+        if (precioMin != null && precioMax != null && precioMin > precioMax) {
+            throw new IllegalArgumentException("precioMin no puede ser mayor que precioMax");
+        }
+    }
+
+    public static Suscripcion of(MultiValueMap<String, String> params) {
+        var categorias = valores(params.get("categoria"));
+        var tipos = valores(params.get("tipo")).stream()
+                .map(t -> Notificacion.Tipo.valueOf(t.toUpperCase(Locale.ROOT)))
+                .collect(Collectors.toSet());
+        return new Suscripcion(categorias, tipos, precio(params.getFirst("precioMin")), precio(params.getFirst("precioMax")));
+    }
+
+    private static Set<String> valores(List<String> params) {
+        if (params == null) {
+            return Set.of();
+        }
+        return params.stream()
+                .flatMap(p -> Arrays.stream(p.split(",")))
+                .filter(p -> !p.isBlank())
+                .collect(Collectors.toSet());
+    }
+
+    private static Double precio(String valor) {
+        return valor == null || valor.isBlank() ? null : Double.valueOf(valor);
+    }
+
+    // Una actualizacion tambien coincide si coincidia el estado anterior, para que el cliente sepa que el funko sale
+    public boolean matches(Notificacion<?> notificacion) {
+        if (!tipos.isEmpty() && !tipos.contains(notificacion.type())) {
+            return false;
+        }
+        if (categorias.isEmpty() && precioMin == null && precioMax == null) {
+            return true;
+        }
+        if (!(notificacion.data() instanceof NotificacionDto dto)) {
+            return false;
+        }
+        return matches(dto) || (dto.tieneAnterior() && matches(dto.anterior()));
+    }
+
+    private boolean matches(NotificacionDto dto) {
+        if (!categorias.isEmpty() && (dto.categoria() == null || !categorias.contains(dto.categoria().toUpperCase(Locale.ROOT)))) {
+            return false;
+        }
+        if (precioMin != null && (dto.precio() == null || dto.precio() < precioMin)) {
+            return false;
+        }
+        return precioMax == null || (dto.precio() != null && dto.precio() <= precioMax);
+    }
+}
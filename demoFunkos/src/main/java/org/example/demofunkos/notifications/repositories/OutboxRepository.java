@@ -0,0 +1,13 @@
+package org.example.demofunkos.notifications.repositories;
+
+import org.example.demofunkos.notifications.models.OutboxEvento;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboxRepository extends JpaRepository<OutboxEvento, Long> {
+    List<OutboxEvento> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+}
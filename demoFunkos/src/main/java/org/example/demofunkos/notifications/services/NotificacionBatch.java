@@ -0,0 +1,55 @@
+package org.example.demofunkos.notifications.services;
+
+import org.example.demofunkos.notifications.dto.NotificacionDto;
+import org.example.demofunkos.notifications.models.Notificacion;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class NotificacionBatch {
+    private final Map<Object, Notificacion<?>> porClave = new LinkedHashMap<>();
+    private int recibidas;
+
+    public void add(Notificacion<?> notificacion) {
+        recibidas++;
+        Object clave = clave(notificacion);
+        var anterior = porClave.remove(clave);
+        if (anterior != null && anterior.type() == Notificacion.Tipo.CREATE) {
+            // Los clientes no han visto el alta, asi que se mantiene como CREATE o desaparece si se ha borrado
+            if (notificacion.type() == Notificacion.Tipo.DELETE) {
+                return;
+            }
+            Object data = notificacion.data() instanceof NotificacionDto dto ? dto.sinAnterior() : notificacion.data();
+            notificacion = new Notificacion<>(notificacion.entity(), Notificacion.Tipo.CREATE, data, notificacion.createdAt());
+        } else if (anterior != null && anterior.type() == Notificacion.Tipo.UPDATE && notificacion.type() == Notificacion.Tipo.UPDATE
+                && anterior.data() instanceof NotificacionDto previo && notificacion.data() instanceof NotificacionDto dto) {
+            // El estado anterior es el de antes de la primera actualizacion, que es el que conocen los clientes
+            notificacion = new Notificacion<>(notificacion.entity(), Notificacion.Tipo.UPDATE, dto.conAnterior(previo.anterior()), notificacion.createdAt());
+        }
+        porClave.put(clave, notificacion);
+    }
+
+    private static Object clave(Notificacion<?> notificacion) {
+        if (notificacion.data() instanceof NotificacionDto dto && dto.id() != null) {
+            return notificacion.entity() + ":" + dto.id();
+        }
+        return new Object();
+    }
+
+    public List<Notificacion<?>> getNotificaciones() {
+        return List.copyOf(porClave.values());
+    }
+
+    public int getRecibidas() {
+        return recibidas;
+    }
+
+    public int getCoalescidas() {
+        return recibidas - porClave.size();
+    }
+
+    public boolean isEmpty() {
+        return porClave.isEmpty();
+    }
+}
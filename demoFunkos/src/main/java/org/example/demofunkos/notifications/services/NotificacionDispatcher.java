@@ -0,0 +1,13 @@
+package org.example.demofunkos.notifications.services;
+
+import org.example.demofunkos.notifications.models.Notificacion;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public interface NotificacionDispatcher {
+    CompletableFuture<Void> dispatch(Notificacion<?> notificacion);
+
+    // Se publican en orden y juntas: el futuro falla si no se ha podido enviar alguna
+    CompletableFuture<Void> dispatchBatch(List<Notificacion<?>> notificaciones);
+}
@@ -0,0 +1,231 @@
+package org.example.demofunkos.notifications.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.demofunkos.notifications.config.WebSocketSender;
+import org.example.demofunkos.notifications.models.Notificacion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Service
+public class NotificacionDispatcherImpl implements NotificacionDispatcher {
+    private record Pendiente(List<Notificacion<?>> notificaciones, long encoladaNanos, CompletableFuture<Void> resultado) {}
+
+    private final WebSocketSender sender;
+    private final NotificacionLog notificacionLog;
+    private final ObjectMapper objectMapper;
+    private final BlockingQueue<Pendiente> queue;
+    private final Duration shutdownTimeout;
+    private final Duration batchWindow;
+    private final int batchMaxSize;
+    private final Timer latency;
+    private final Counter dropped;
+    private final Counter coalesced;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    @Autowired
+    public NotificacionDispatcherImpl(WebSocketSender sender,
+                                      NotificacionLog notificacionLog,
+                                      ObjectMapper objectMapper,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${notificaciones.queue-capacity:10000}") int queueCapacity,
+                                      @Value("${notificaciones.shutdown-timeout:5s}") Duration shutdownTimeout,
+                                      @Value("${notificaciones.batch.enabled:false}") boolean batchEnabled,
+                                      @Value("${notificaciones.batch.window:100ms}") Duration batchWindow,
+                                      @Value("${notificaciones.batch.max-size:500}") int batchMaxSize) {
+        this.sender = sender;
+        this.notificacionLog = notificacionLog;
+        this.objectMapper = objectMapper;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.shutdownTimeout = shutdownTimeout;
+        this.batchWindow = batchWindow;
+        this.batchMaxSize = batchMaxSize;
+        Gauge.builder("notificaciones.cola", queue, BlockingQueue::size)
+                .description("Notificaciones pendientes de enviar")
+                .register(meterRegistry);
+        this.latency = Timer.builder("notificaciones.dispatch")
+                .description("Tiempo desde que se encola una notificacion hasta que se envia")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("notificaciones.descartadas")
+                .description("Notificaciones descartadas por cola llena")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("notificaciones.coalescidas")
+                .description("Notificaciones sustituidas por otra posterior del mismo funko dentro de un lote")
+                .register(meterRegistry);
+        this.worker = Thread.ofVirtual()
+                .name("notificaciones-dispatcher")
+                .start(batchEnabled ? this::runBatched : this::run);
+    }
+
+    @Override
+    public CompletableFuture<Void> dispatch(Notificacion<?> notificacion) {
+        return encolar(List.of(notificacion));
+    }
+
+    // El lote ocupa una sola posicion de la cola y se publica entero o nada
+    @Override
+    public CompletableFuture<Void> dispatchBatch(List<Notificacion<?>> notificaciones) {
+        if (notificaciones.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return encolar(List.copyOf(notificaciones));
+    }
+
+    private CompletableFuture<Void> encolar(List<Notificacion<?>> notificaciones) {
+        if (!running) {
+            log.warn("El dispatcher de notificaciones esta parado, se descartan " + notificaciones.size() + " notificaciones");
+            dropped.increment(notificaciones.size());
+            return CompletableFuture.failedFuture(new RejectedExecutionException("El dispatcher de notificaciones esta parado"));
+        }
+        var pendiente = new Pendiente(notificaciones, System.nanoTime(), new CompletableFuture<>());
+        if (!queue.offer(pendiente)) {
+            log.warn("Cola de notificaciones llena, se descartan " + notificaciones.size() + " notificaciones, la primera "
+                    + notificaciones.get(0).type());
+            dropped.increment(notificaciones.size());
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Cola de notificaciones llena"));
+        }
+        return pendiente.resultado();
+    }
+
+    private void run() {
+        try {
+            while (running || !queue.isEmpty()) {
+                var pendiente = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (pendiente != null) {
+                    send(pendiente);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runBatched() {
+        try {
+            while (running || !queue.isEmpty()) {
+                var primera = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (primera == null) {
+                    continue;
+                }
+                var pendientes = new ArrayList<Pendiente>();
+                pendientes.add(primera);
+                int total = primera.notificaciones().size();
+                long deadline = System.nanoTime() + batchWindow.toNanos();
+                while (total < batchMaxSize) {
+                    long restante = deadline - System.nanoTime();
+                    var siguiente = restante > 0 ? queue.poll(restante, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (siguiente == null) {
+                        break;
+                    }
+                    pendientes.add(siguiente);
+                    total += siguiente.notificaciones().size();
+                }
+                sendBatch(pendientes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sendBatch(List<Pendiente> pendientes) {
+        var batch = new NotificacionBatch();
+        pendientes.forEach(p -> p.notificaciones().forEach(batch::add));
+        coalesced.increment(batch.getCoalescidas());
+        RuntimeException error = null;
+        try {
+            if (!batch.isEmpty()) {
+                notificacionLog.publicar(batch.getNotificaciones(), this::broadcastBatch);
+            }
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        long ahora = System.nanoTime();
+        for (var p : pendientes) {
+            latency.record(ahora - p.encoladaNanos(), TimeUnit.NANOSECONDS);
+            completar(p, error);
+        }
+    }
+
+    private void send(Pendiente pendiente) {
+        RuntimeException error = null;
+        try {
+            notificacionLog.publicar(pendiente.notificaciones(), numeradas -> numeradas.forEach(this::broadcast));
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        latency.record(System.nanoTime() - pendiente.encoladaNanos(), TimeUnit.NANOSECONDS);
+        completar(pendiente, error);
+    }
+
+    // Si la difusion falla el futuro falla, asi quien espera (el outbox) lo vuelve a intentar
+    private static void completar(Pendiente pendiente, RuntimeException error) {
+        if (error == null) {
+            pendiente.resultado().complete(null);
+        } else {
+            pendiente.resultado().completeExceptionally(error);
+        }
+    }
+
+    private void broadcast(Notificacion<?> notificacion) {
+        try {
+            sender.broadcast(notificacion, objectMapper.writeValueAsBytes(notificacion));
+        } catch (JsonProcessingException e) {
+            log.error("Error al convertir la notificación a JSON", e);
+            throw new UncheckedIOException(e);
+        } catch (IOException e) {
+            log.error("Error al enviar el mensaje a través del servicio WebSocket", e);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            log.error("Error al enviar el mensaje a través del servicio WebSocket", e);
+            throw e;
+        }
+    }
+
+    private void broadcastBatch(List<Notificacion<?>> notificaciones) {
+        try {
+            sender.broadcastBatch(notificaciones, objectMapper::writeValueAsBytes);
+        } catch (JsonProcessingException e) {
+            log.error("Error al convertir las notificaciones a JSON", e);
+            throw new UncheckedIOException(e);
+        } catch (IOException e) {
+            log.error("Error al enviar el mensaje a través del servicio WebSocket", e);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            log.error("Error al enviar el mensaje a través del servicio WebSocket", e);
+            throw e;
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (!worker.join(shutdownTimeout)) {
+            log.warn("No se han podido enviar " + queue.size() + " notificaciones pendientes antes de parar");
+            worker.interrupt();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.example.demofunkos.notifications.services;
+
+import org.example.demofunkos.notifications.models.Notificacion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+public class NotificacionLog {
+    private final Notificacion<?>[] buffer;
+    // Las secuencias solo viven en memoria y vuelven a empezar en cada arranque: el epoch distingue una
+    // secuencia de otra ejecucion, con la que no se puede reanudar aunque el numero caiga dentro del buffer
+    private final String epoch;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long ultimaSeq;
+
+    public NotificacionLog(int capacidad) {
+        this(capacidad, Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36));
+    }
+
+    public NotificacionLog(int capacidad, String epoch) {
+        if (capacidad < 1) {
+            throw new IllegalArgumentException("La capacidad del log de notificaciones debe ser mayor que 0");
+        }
+        this.buffer = new Notificacion<?>[capacidad];
+        this.epoch = epoch;
+    }
+
+    // Numera y guarda las notificaciones y las difunde sin soltar el bloqueo, asi una reanudacion
+    // concurrente las recibe o en la repeticion o en directo, pero nunca dos veces ni ninguna
+    public void publicar(List<Notificacion<?>> notificaciones, Consumer<List<Notificacion<?>>> difusion) {
+        lock.lock();
+        long inicial = ultimaSeq;
+        var sustituidas = new ArrayList<Notificacion<?>>(notificaciones.size());
+        try {
+            var numeradas = new ArrayList<Notificacion<?>>(notificaciones.size());
+            for (var notificacion : notificaciones) {
+                var numerada = notificacion.withSeq(epoch, ++ultimaSeq);
+                sustituidas.add(buffer[(int) (ultimaSeq % buffer.length)]);
+                buffer[(int) (ultimaSeq % buffer.length)] = numerada;
+                numeradas.add(numerada);
+            }
+            difusion.accept(numeradas);
+        } catch (RuntimeException e) {
+            // Si la difusion falla se deshace la numeracion: el reintento no debe aparecer dos veces al reanudar
+            for (int i = sustituidas.size() - 1; i >= 0; i--) {
+                buffer[(int) ((inicial + 1 + i) % buffer.length)] = sustituidas.get(i);
+            }
+            ultimaSeq = inicial;
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Recibe las notificaciones posteriores a desde, o vacio si son de otra ejecucion o ya no estan en el
+    // buffer y hay que resincronizar
+    public <T> T reanudar(String epoch, long desde, Function<Optional<List<Notificacion<?>>>, T> accion) {
+        lock.lock();
+        try {
+            return accion.apply(this.epoch.equals(epoch) ? desde(desde) : Optional.empty());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Optional<List<Notificacion<?>>> desde(long desde) {
+        long primera = Math.max(1, ultimaSeq - buffer.length + 1);
+        if (desde > ultimaSeq || desde < primera - 1) {
+            return Optional.empty();
+        }
+        var pendientes = new ArrayList<Notificacion<?>>((int) (ultimaSeq - desde));
+        for (long seq = desde + 1; seq <= ultimaSeq; seq++) {
+            pendientes.add(buffer[(int) (seq % buffer.length)]);
+        }
+        return Optional.of(pendientes);
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public long getUltimaSeq() {
+        lock.lock();
+        try {
+            return ultimaSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package org.example.demofunkos.notifications.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.demofunkos.notifications.dto.NotificacionDto;
+import org.example.demofunkos.notifications.models.Notificacion;
+import org.example.demofunkos.notifications.models.OutboxEvento;
+import org.example.demofunkos.notifications.repositories.OutboxRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Service
+public class OutboxRelay {
+    private final OutboxRepository repository;
+    private final NotificacionDispatcher dispatcher;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final Duration pollInterval;
+    private final Timer latencia;
+    private final Counter reintentos;
+
+    private record Lote(List<OutboxEvento> eventos, CompletableFuture<Void> resultado) {}
+
+    private static final int MAX_HUECOS = 10_000;
+
+    @Value("${notificaciones.outbox.hueco-timeout:1m}")
+    private Duration huecoTimeout = Duration.ofMinutes(1);
+
+    private final Semaphore despertador = new Semaphore(0);
+    // Solo los usa el hilo del relay
+    private long cursor;
+    private final Map<Long, Long> huecos = new HashMap<>();
+    private Lote enCurso;
+    private List<OutboxEvento> reintento;
+    private volatile boolean running;
+    private Thread worker;
+
+    @Autowired
+    public OutboxRelay(OutboxRepository repository,
+                       NotificacionDispatcher dispatcher,
+                       ObjectMapper objectMapper,
+                       MeterRegistry meterRegistry,
+                       @Value("${notificaciones.outbox.batch-size:100}") int batchSize,
+                       @Value("${notificaciones.outbox.poll-interval:1s}") Duration pollInterval) {
+        this.repository = repository;
+        this.dispatcher = dispatcher;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.pollInterval = pollInterval;
+        this.latencia = Timer.builder("notificaciones.outbox.latencia")
+                .description("Tiempo desde que se registra un cambio en el outbox hasta que se envia a los clientes")
+                .register(meterRegistry);
+        this.reintentos = Counter.builder("notificaciones.outbox.reintentos")
+                .description("Eventos del outbox que el dispatcher no ha aceptado y se vuelven a intentar")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        worker = Thread.ofVirtual().name("notificaciones-outbox").start(this::run);
+    }
+
+    public void despertar() {
+        despertador.release();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                despertador.tryAcquire(pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+                despertador.drainPermits();
+                publicarPendientes();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Error al publicar los eventos del outbox", e);
+            }
+        }
+    }
+
+    // Un solo lote en vuelo: si falla se repite antes de leer nada mas, asi los eventos salen en el orden del
+    // outbox aunque haya reintentos. Cuando termina bien se borra y se sigue con el siguiente en la misma pasada
+    void publicarPendientes() {
+        while (true) {
+            if (enCurso != null) {
+                if (!enCurso.resultado().isDone()) {
+                    return;
+                }
+                var lote = enCurso;
+                enCurso = null;
+                if (lote.resultado().isCompletedExceptionally()) {
+                    // Se espera a la siguiente pasada para no insistir sin pausa si la cola esta llena
+                    reintentos.increment(lote.eventos().size());
+                    reintento = lote.eventos();
+                    return;
+                }
+                confirmar(lote.eventos());
+            }
+            var eventos = reintento != null ? reintento : leer();
+            reintento = null;
+            if (eventos.isEmpty()) {
+                return;
+            }
+            enviar(eventos);
+        }
+    }
+
+    // Los ids IDENTITY se reservan al insertar pero se hacen visibles al confirmar, asi que un id bajo puede
+    // aparecer despues de otros mas altos. Se sigue desde el cursor y los ids que se han saltado se vuelven a
+    // buscar hasta que aparecen o pasa hueco-timeout (la transaccion se deshizo)
+    private List<OutboxEvento> leer() {
+        var eventos = new ArrayList<OutboxEvento>();
+        if (!huecos.isEmpty()) {
+            long caducado = System.nanoTime() - huecoTimeout.toNanos();
+            huecos.values().removeIf(visto -> visto - caducado < 0);
+            for (var evento : repository.findAllById(huecos.keySet())) {
+                eventos.add(evento);
+                huecos.remove(evento.getId());
+            }
+            eventos.sort(Comparator.comparing(OutboxEvento::getId));
+        }
+
+        var siguientes = repository.findByIdGreaterThanOrderByIdAsc(cursor, Limit.of(batchSize));
+        // Con el cursor a 0 (al arrancar) no se sabe que habia antes del primero: lo anterior ya se publico
+        long anterior = cursor;
+        for (var evento : siguientes) {
+            if (anterior > 0) {
+                registrarHuecos(anterior, evento.getId());
+            }
+            anterior = evento.getId();
+        }
+        cursor = anterior;
+        eventos.addAll(siguientes);
+        return eventos;
+    }
+
+    private void registrarHuecos(long anterior, long siguiente) {
+        long visto = System.nanoTime();
+        for (long id = anterior + 1; id < siguiente; id++) {
+            if (huecos.size() >= MAX_HUECOS) {
+                log.warn("Demasiados huecos en los ids del outbox, no se vigila a partir del " + id);
+                return;
+            }
+            huecos.putIfAbsent(id, visto);
+        }
+    }
+
+    private void enviar(List<OutboxEvento> eventos) {
+        var legibles = new ArrayList<OutboxEvento>(eventos.size());
+        var notificaciones = new ArrayList<Notificacion<?>>(eventos.size());
+        var ilegibles = new ArrayList<Long>();
+        for (var evento : eventos) {
+            try {
+                notificaciones.add(new Notificacion<>(
+                        evento.getEntity(),
+                        evento.getTipo(),
+                        objectMapper.readValue(evento.getPayload(), NotificacionDto.class),
+                        evento.getCreatedAt().toString()
+                ));
+                legibles.add(evento);
+            } catch (JsonProcessingException e) {
+                log.error("El evento del outbox " + evento.getId() + " no se puede leer, se descarta", e);
+                ilegibles.add(evento.getId());
+            }
+        }
+        if (!ilegibles.isEmpty()) {
+            repository.deleteAllByIdInBatch(ilegibles);
+        }
+        if (legibles.isEmpty()) {
+            return;
+        }
+
+        // Solo se borra cuando se ha enviado; si el proceso cae antes se vuelve a enviar al arrancar
+        var resultado = dispatcher.dispatchBatch(notificaciones);
+        enCurso = new Lote(legibles, resultado);
+        resultado.thenRun(this::despertar);
+    }
+
+    private void confirmar(List<OutboxEvento> eventos) {
+        repository.deleteAllByIdInBatch(eventos.stream().map(OutboxEvento::getId).toList());
+        var ahora = LocalDateTime.now();
+        eventos.forEach(evento -> latencia.record(Duration.between(evento.getCreatedAt(), ahora)));
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            worker.join(pollInterval);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package org.example.demofunkos.notifications.services;
+
+import org.example.demofunkos.notifications.models.Notificacion;
+
+public interface OutboxService {
+    void registrar(Notificacion<?> notificacion);
+}
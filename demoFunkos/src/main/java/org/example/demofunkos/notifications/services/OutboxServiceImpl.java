@@ -0,0 +1,56 @@
+package org.example.demofunkos.notifications.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.example.demofunkos.notifications.models.Notificacion;
+import org.example.demofunkos.notifications.models.OutboxEvento;
+import org.example.demofunkos.notifications.repositories.OutboxRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+
+@Slf4j
+@Service
+public class OutboxServiceImpl implements OutboxService {
+    private final OutboxRepository repository;
+    private final OutboxRelay relay;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public OutboxServiceImpl(OutboxRepository repository, OutboxRelay relay, ObjectMapper objectMapper) {
+        this.repository = repository;
+        this.relay = relay;
+        this.objectMapper = objectMapper;
+    }
+
+    // Se guarda en la transaccion del cambio: si este hace rollback la notificacion tampoco se publica
+    @Override
+    @Transactional
+    public void registrar(Notificacion<?> notificacion) {
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(notificacion.data());
+        } catch (JsonProcessingException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "No se ha podido registrar la notificacion", e);
+        }
+        repository.save(new OutboxEvento(null, notificacion.entity(), notificacion.type(), payload, LocalDateTime.now()));
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    relay.despertar();
+                }
+            });
+        } else {
+            relay.despertar();
+        }
+    }
+}
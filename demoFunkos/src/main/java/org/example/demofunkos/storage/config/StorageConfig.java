@@ -20,13 +20,25 @@ public class StorageConfig {
     }
 
     @Bean
-    public CommandLineRunner init(StorageService storageService, @Value("${upload.delete}") String deleteAll) {
+    public CommandLineRunner init(StorageService storageService, @Value("${upload.delete}") String deleteAll,
+                                  @Value("${upload.migrate:false}") boolean migrate,
+                                  @Value("${upload.purge.async:true}") boolean purgeAsync,
+                                  @Value("${upload.purge.threads:4}") int purgeThreads) {
         return args -> {
             if (deleteAll.equals("true")) {
-                storageService.deleteAll();
+                if (purgeAsync) {
+                    // No se espera: el resultado se registra en el log cuando termina
+                    storageService.deleteAllAsync(purgeThreads);
+                } else {
+                    storageService.deleteAll();
+                }
             }
 
             storageService.init();
+
+            if (migrate) {
+                storageService.migrate();
+            }
         };
     }
 }
\ No newline at end of file
@@ -1,45 +1,221 @@
 package org.example.demofunkos.storage.controllers;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
+import org.example.demofunkos.storage.dto.FicheroMetadatos;
+import org.example.demofunkos.storage.dto.FicheroSubidoDto;
+import org.example.demofunkos.storage.dto.IniciarSubidaDto;
+import org.example.demofunkos.storage.dto.SesionSubidaDto;
+import org.example.demofunkos.storage.exceptions.StorageNotFound;
+import org.example.demofunkos.storage.exceptions.StoragePayloadTooLarge;
+import org.example.demofunkos.storage.models.Fichero;
 import org.example.demofunkos.storage.services.StorageService;
+import org.example.demofunkos.storage.services.UploadSessionService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.FieldError;
+import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 
 @RestController
 @Slf4j
 @RequestMapping("/files")
 public class StorageController {
+    // Atributos con los que Tomcat envia el fichero con sendfile, sin pasar los bytes por la JVM
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    // Igual que el DefaultServlet de Tomcat: por debajo de este tamano sendfile no compensa
+    private static final long SENDFILE_MIN_SIZE = 48 * 1024;
+
     private final StorageService storageService;
+    private final UploadSessionService uploadSessionService;
+    private final CacheControl cacheControl;
+    private final long maxUploadSize;
 
     @Autowired
-    public StorageController(StorageService storageService) {
+    public StorageController(StorageService storageService,
+                             UploadSessionService uploadSessionService,
+                             @Value("${upload.cache-control.max-age:7d}") Duration maxAge,
+                             @Value("${upload.max-size:50MB}") DataSize maxUploadSize) {
         this.storageService = storageService;
+        this.uploadSessionService = uploadSessionService;
+        this.cacheControl = CacheControl.maxAge(maxAge).cachePublic();
+        this.maxUploadSize = maxUploadSize.toBytes();
+    }
+
+    // El cuerpo es el fichero tal cual, sin multipart: se escribe en disco segun llega, sin pasar por el resolver
+    @PostMapping(consumes = {MediaType.APPLICATION_OCTET_STREAM_VALUE, "image/*"})
+    public ResponseEntity<FicheroSubidoDto> upload(@RequestParam String filename, HttpServletRequest request) throws IOException {
+        if (request.getContentLengthLong() > maxUploadSize) {
+            throw new StoragePayloadTooLarge("El fichero supera el tamaño maximo de " + maxUploadSize + " bytes");
+        }
+        return created(storageService.store(filename, request.getInputStream(), maxUploadSize));
+    }
+
+    // Subidas por partes reanudables: iniciar, subir cada parte (en cualquier orden, repetibles) y completar
+    @PostMapping(value = "/uploads", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<SesionSubidaDto> iniciarSubida(@Valid @RequestBody IniciarSubidaDto subida) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(uploadSessionService.iniciar(subida));
+    }
+
+    @PutMapping(value = "/uploads/{id}/chunks/{index}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<SesionSubidaDto> subirChunk(@PathVariable String id, @PathVariable int index,
+                                                      HttpServletRequest request) throws IOException {
+        return ResponseEntity.ok(uploadSessionService.subirChunk(id, index, request.getInputStream()));
+    }
+
+    @GetMapping("/uploads/{id}")
+    public ResponseEntity<SesionSubidaDto> estadoSubida(@PathVariable String id) {
+        return ResponseEntity.ok(uploadSessionService.estado(id));
+    }
+
+    @PostMapping("/uploads/{id}/complete")
+    public ResponseEntity<FicheroSubidoDto> completarSubida(@PathVariable String id) {
+        return created(uploadSessionService.completar(id));
+    }
+
+    @DeleteMapping("/uploads/{id}")
+    public ResponseEntity<Void> cancelarSubida(@PathVariable String id) {
+        uploadSessionService.cancelar(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    private ResponseEntity<FicheroSubidoDto> created(Fichero fichero) {
+        String url = storageService.getUrl(fichero.getNombre());
+        return ResponseEntity.created(URI.create(url))
+                .body(new FicheroSubidoDto(fichero.getNombre(), url, fichero.getTamano(), fichero.getDigest()));
     }
 
     @GetMapping(value = "{filename:.+}")
-    @ResponseBody
-    public ResponseEntity<Resource> serveFile(@PathVariable String filename, HttpServletRequest request) {
-        Resource file = storageService.loadAsResource(filename);
+    public void serveFile(@PathVariable String filename,
+                          @RequestParam(required = false) String variant,
+                          HttpServletRequest request,
+                          HttpServletResponse response) throws IOException {
+        serveLocalFile(storageService.loadMetadata(filename, variant), request, response);
+    }
 
-        String contentType = null;
-        try {
-            contentType = request.getServletContext().getMimeType(file.getFile().getAbsolutePath());
-        } catch (IOException ex) {
-            log.info("No se puede determinar el tipo de contenido del fichero");
+    private void serveLocalFile(FicheroMetadatos fichero, HttpServletRequest request,
+                                HttpServletResponse response) throws IOException {
+        String etag = fichero.etag();
+        CacheControl cache = cacheControl;
+        if (fichero.variantePendiente() != null) {
+            // El original en lugar de una variante por generar: ETag debil propio y revalidacion en cada peticion,
+            // asi ninguna cache lo guarda como la variante ni lo valida con el ETag del original
+            etag = "W/" + etag.substring(0, etag.length() - 1) + "-" + fichero.variantePendiente() + "\"";
+            cache = CacheControl.noCache();
+        }
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cache.getHeaderValue());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        // Pone ETag y Last-Modified y responde 304 si coinciden con If-None-Match / If-Modified-Since
+        if (new ServletWebRequest(request, response).checkNotModified(etag, fichero.lastModified())) {
+            return;
         }
 
-        if (contentType == null) {
-            contentType = "application/octet-stream";
+        long size = fichero.size();
+        long start = 0;
+        long end = size - 1;
+        List<HttpRange> ranges = requestedRanges(request, etag);
+        if (ranges.size() == 1) {
+            HttpRange range = ranges.get(0);
+            start = range.getRangeStart(size);
+            end = range.getRangeEnd(size);
+            if (start >= size || start > end) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return;
+            }
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
         }
 
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(contentType))
-                .body(file);
+        long length = end - start + 1;
+        response.setContentType(fichero.mediaType().toString());
+        response.setContentLengthLong(length);
+
+        // Con sendfile no se copia nada por la JVM, asi que la cache en memoria solo se usa cuando no hay sendfile
+        if (length >= SENDFILE_MIN_SIZE && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, fichero.path().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        var contenido = storageService.loadContent(fichero);
+        if (contenido.isPresent()) {
+            ByteBuffer buffer = contenido.get().position((int) start).limit((int) end + 1);
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(fichero.path(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                position += channel.transferTo(position, end + 1 - position, out);
+            }
+        } catch (NoSuchFileException e) {
+            throw new StorageNotFound("No se puede leer fichero: " + fichero.path().getFileName());
+        }
+    }
+
+    // Varios rangos o un If-Range que no coincide se sirven como respuesta completa, como permite el RFC 9110
+    // If-Range solo admite ETags fuertes
+    private List<HttpRange> requestedRanges(HttpServletRequest request, String etag) {
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range == null) {
+            return List.of();
+        }
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && (!ifRange.equals(etag) || etag.startsWith("W/"))) {
+            return List.of();
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(range);
+            return ranges.size() == 1 ? ranges : List.of();
+        } catch (IllegalArgumentException e) {
+            return List.of();
+        }
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(MethodArgumentNotValidException.class)
+    public Map<String, String> handleValidationExceptions(
+            MethodArgumentNotValidException ex) {
+        Map<String, String> errors = new HashMap<>();
+        ex.getBindingResult().getAllErrors().forEach((error) -> {
+            String fieldName = ((FieldError) error).getField();
+            String errorMessage = error.getDefaultMessage();
+            errors.put(fieldName, errorMessage);
+        });
+        return errors;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,23 @@
+package org.example.demofunkos.storage.dto;
+
+import org.springframework.http.MediaType;
+
+import java.nio.file.Path;
+
+public record FicheroMetadatos(
+        Path path,
+        long size,
+        long lastModified,
+        String etag,
+        MediaType mediaType,
+        String variantePendiente
+) {
+    public FicheroMetadatos(Path path, long size, long lastModified, String etag, MediaType mediaType) {
+        this(path, size, lastModified, etag, mediaType, null);
+    }
+
+    // El original servido en lugar de una variante que aun no existe
+    public FicheroMetadatos enLugarDe(String variante) {
+        return new FicheroMetadatos(path, size, lastModified, etag, mediaType, variante);
+    }
+}
@@ -0,0 +1,9 @@
+package org.example.demofunkos.storage.dto;
+
+public record FicheroSubidoDto(
+        String nombre,
+        String url,
+        long tamano,
+        String sha256
+) {
+}
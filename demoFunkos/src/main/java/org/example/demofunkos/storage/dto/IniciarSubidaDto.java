@@ -0,0 +1,21 @@
+package org.example.demofunkos.storage.dto;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IniciarSubidaDto {
+        @NotBlank(message = "El nombre del fichero no puede estar vacio")
+        String filename;
+        @NotNull(message = "El tamaño no puede ser nulo")
+        @Min(value = 1, message = "El tamaño debe ser mayor que 0")
+        Long tamano;
+        @Min(value = 1, message = "El tamaño de cada parte debe ser mayor que 0")
+        Integer chunkSize;
+}
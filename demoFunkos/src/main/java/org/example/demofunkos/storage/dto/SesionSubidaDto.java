@@ -0,0 +1,15 @@
+package org.example.demofunkos.storage.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public record SesionSubidaDto(
+        String id,
+        String filename,
+        long tamano,
+        int chunkSize,
+        int chunks,
+        List<Integer> pendientes,
+        LocalDateTime expiraEn
+) {
+}
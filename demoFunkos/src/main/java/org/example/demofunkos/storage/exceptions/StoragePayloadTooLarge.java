@@ -0,0 +1,17 @@
+package org.example.demofunkos.storage.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.io.Serial;
+
+@ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+public class StoragePayloadTooLarge extends StorageException {
+
+    @Serial
+    private static final long serialVersionUID = 43876691117560211L;
+
+    public StoragePayloadTooLarge(String mensaje) {
+        super(mensaje);
+    }
+}
@@ -0,0 +1,28 @@
+package org.example.demofunkos.storage.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "ficheros", indexes = @Index(name = "idx_ficheros_digest", columnList = "digest"))
+public class Fichero {
+    @Id
+    @Column(name = "nombre")
+    private String nombre;
+
+    @Column(name = "digest", nullable = false, length = 64)
+    private String digest;
+
+    @Column(name = "tamano", nullable = false)
+    private Long tamano;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
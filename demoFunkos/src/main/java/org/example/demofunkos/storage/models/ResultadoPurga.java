@@ -0,0 +1,12 @@
+package org.example.demofunkos.storage.models;
+
+import java.time.Duration;
+
+public record ResultadoPurga(long ficheros, long directorios, long fallos, Duration duracion) {
+
+    public static final ResultadoPurga VACIO = new ResultadoPurga(0, 0, 0, Duration.ZERO);
+
+    public double ficherosPorSegundo() {
+        return duracion.isZero() ? 0 : ficheros * 1000.0 / Math.max(1, duracion.toMillis());
+    }
+}
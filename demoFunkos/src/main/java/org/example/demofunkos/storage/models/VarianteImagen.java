@@ -0,0 +1,38 @@
+package org.example.demofunkos.storage.models;
+
+import org.example.demofunkos.storage.exceptions.StorageException;
+
+import javax.imageio.ImageIO;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Una variante reducida de las imagenes subidas: nombre, ancho maximo y formato (null para conservar el original)
+public record VarianteImagen(String nombre, int ancho, String formato) {
+
+    // Formato de upload.variants: nombre:ancho[:formato] separados por comas, p.ej. thumb:160:jpg,medium:640
+    public static List<VarianteImagen> parse(String config) {
+        List<VarianteImagen> variantes = new ArrayList<>();
+        if (config == null || config.isBlank()) {
+            return variantes;
+        }
+        for (String entrada : config.split(",")) {
+            String[] partes = entrada.trim().split(":");
+            if (partes.length < 2 || partes.length > 3 || partes[0].isBlank()) {
+                throw new StorageException("Variante de imagen no valida: " + entrada);
+            }
+            int ancho;
+            try {
+                ancho = Integer.parseInt(partes[1]);
+            } catch (NumberFormatException e) {
+                throw new StorageException("Ancho de variante no valido: " + entrada);
+            }
+            String formato = partes.length == 3 ? partes[2].toLowerCase(Locale.ROOT) : null;
+            if (ancho <= 0 || (formato != null && !ImageIO.getImageWritersByFormatName(formato).hasNext())) {
+                throw new StorageException("Variante de imagen no valida: " + entrada);
+            }
+            variantes.add(new VarianteImagen(partes[0], ancho, formato));
+        }
+        return variantes;
+    }
+}
@@ -0,0 +1,10 @@
+package org.example.demofunkos.storage.repositories;
+
+import org.example.demofunkos.storage.models.Fichero;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface FicheroRepository extends JpaRepository<Fichero, String> {
+    long countByDigest(String digest);
+}
@@ -0,0 +1,97 @@
+package org.example.demofunkos.storage.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.example.demofunkos.storage.dto.FicheroMetadatos;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+// Contenido de los ficheros mas pedidos en buffers directos, fuera del heap, con un presupuesto de bytes.
+// La expulsion es W-TinyLFU por peso, asi un fichero grande pedido una vez no desplaza a las imagenes calientes.
+@Slf4j
+@Component
+public class HotFileCache {
+    private final Cache<Path, Entrada> cache;
+    private final long maxEntrySize;
+
+    private record Entrada(String etag, ByteBuffer contenido) {
+    }
+
+    @Autowired
+    public HotFileCache(@Value("${upload.hot-cache.max-bytes:64MB}") DataSize maxBytes,
+                        @Value("${upload.hot-cache.max-entry-size:512KB}") DataSize maxEntrySize,
+                        MeterRegistry meterRegistry) {
+        this.maxEntrySize = Math.min(maxEntrySize.toBytes(), maxBytes.toBytes());
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes.toBytes())
+                .weigher((Path path, Entrada entrada) -> entrada.contenido().capacity())
+                // La expulsion se hace en el hilo que inserta: el presupuesto de bytes se cumple al volver de get
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "ficheros.hot");
+        Gauge.builder("ficheros.hot.bytes", cache, c -> c.policy().eviction()
+                        .flatMap(eviction -> eviction.weightedSize().stream().boxed().findFirst())
+                        .orElse(0L))
+                .description("Bytes ocupados por la cache de ficheros calientes")
+                .register(meterRegistry);
+    }
+
+    // Vacio si el fichero es demasiado grande para la cache; el ETag detecta ficheros reemplazados en disco
+    public Optional<ByteBuffer> get(FicheroMetadatos fichero) {
+        if (fichero.size() > maxEntrySize) {
+            return Optional.empty();
+        }
+        try {
+            Entrada entrada = cache.get(fichero.path(), path -> leer(fichero));
+            if (!entrada.etag().equals(fichero.etag())) {
+                entrada = cache.asMap().compute(fichero.path(), (path, actual) ->
+                        actual != null && actual.etag().equals(fichero.etag()) ? actual : leer(fichero));
+            }
+            return Optional.of(entrada.contenido().duplicate());
+        } catch (UncheckedIOException e) {
+            log.warn("No se puede cachear el fichero " + fichero.path().getFileName() + " " + e.getCause());
+            return Optional.empty();
+        }
+    }
+
+    private static Entrada leer(FicheroMetadatos fichero) {
+        try (FileChannel channel = FileChannel.open(fichero.path(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Math.toIntExact(fichero.size()));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("El fichero ha cambiado de tamano mientras se leia");
+                }
+            }
+            return new Entrada(fichero.etag(), buffer.flip().asReadOnlyBuffer());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Tambien se descartan las variantes del fichero, que se guardan a su lado como .<nombre>.<variante>
+    public void invalidate(Path path) {
+        String prefijoVariantes = "." + path.getFileName() + ".";
+        cache.asMap().keySet().removeIf(key -> key.equals(path)
+                || (key.getParent() != null && key.getParent().equals(path.getParent())
+                && key.getFileName().toString().startsWith(prefijoVariantes)));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+}
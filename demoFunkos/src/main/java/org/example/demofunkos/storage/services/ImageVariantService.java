@@ -0,0 +1,18 @@
+package org.example.demofunkos.storage.services;
+
+import org.example.demofunkos.storage.models.VarianteImagen;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+public interface ImageVariantService {
+    void generar(Path original);
+
+    Optional<VarianteImagen> getVariante(String nombre);
+
+    Path path(Path original, VarianteImagen variante);
+
+    void mover(Path original, Path destino);
+
+    void eliminar(Path original);
+}
@@ -0,0 +1,194 @@
+package org.example.demofunkos.storage.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.demofunkos.storage.models.VarianteImagen;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import java.awt.Color;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Service
+public class ImageVariantServiceImpl implements ImageVariantService {
+    // Evita descomprimir imagenes enormes en memoria (bombas de descompresion)
+    private static final long MAX_PIXELS = 40_000_000L;
+
+    private final List<VarianteImagen> variantes;
+    private final ThreadPoolExecutor executor;
+    private final Duration shutdownTimeout;
+    private final Timer generacion;
+    private final Counter rechazadas;
+
+    @Autowired
+    public ImageVariantServiceImpl(@Value("${upload.variants:}") String variantes,
+                                   @Value("${upload.variants.pool-size:2}") int poolSize,
+                                   @Value("${upload.variants.queue-capacity:100}") int queueCapacity,
+                                   @Value("${upload.variants.shutdown-timeout:10s}") Duration shutdownTimeout,
+                                   MeterRegistry meterRegistry) {
+        this.variantes = VarianteImagen.parse(variantes);
+        // Reescalar es trabajo de CPU: hilos de plataforma y cola acotada para no saturar la maquina con subidas en rafaga
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("ficheros-variantes-", 0).daemon().factory());
+        this.shutdownTimeout = shutdownTimeout;
+        this.generacion = Timer.builder("ficheros.variantes")
+                .description("Tiempo en generar todas las variantes de una imagen subida")
+                .register(meterRegistry);
+        this.rechazadas = Counter.builder("ficheros.variantes.rechazadas")
+                .description("Imagenes sin variantes porque la cola de generacion estaba llena")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void generar(Path original) {
+        if (variantes.isEmpty()) {
+            return;
+        }
+        try {
+            executor.execute(() -> generacion.record(() -> generarVariantes(original)));
+        } catch (RejectedExecutionException e) {
+            // Sin variantes se sirve el original, no se pierde nada
+            rechazadas.increment();
+            log.warn("Cola de variantes llena, no se generan variantes de " + original.getFileName());
+        }
+    }
+
+    private void generarVariantes(Path original) {
+        try {
+            var leida = leer(original);
+            if (leida.isEmpty()) {
+                return;
+            }
+            BufferedImage imagen = leida.get().imagen();
+            for (VarianteImagen variante : variantes) {
+                if (imagen.getWidth() <= variante.ancho() && variante.formato() == null) {
+                    continue;
+                }
+                String formato = variante.formato() != null ? variante.formato() : leida.get().formato();
+                escribir(escalar(imagen, variante.ancho(), formato), formato, path(original, variante));
+            }
+            log.info("Generadas variantes de " + original.getFileName());
+        } catch (IOException | RuntimeException e) {
+            log.warn("No se pueden generar variantes de " + original.getFileName() + " " + e);
+        }
+    }
+
+    private record Leida(BufferedImage imagen, String formato) {
+    }
+
+    private Optional<Leida> leer(Path original) throws IOException {
+        try (var input = ImageIO.createImageInputStream(original.toFile())) {
+            var readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                return Optional.empty();
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                if ((long) reader.getWidth(0) * reader.getHeight(0) > MAX_PIXELS) {
+                    log.warn("Imagen demasiado grande para generar variantes: " + original.getFileName());
+                    return Optional.empty();
+                }
+                return Optional.of(new Leida(reader.read(0), reader.getFormatName().toLowerCase(Locale.ROOT)));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage escalar(BufferedImage imagen, int anchoMaximo, String formato) {
+        int ancho = Math.min(anchoMaximo, imagen.getWidth());
+        int alto = Math.max(1, Math.round((float) imagen.getHeight() * ancho / imagen.getWidth()));
+        // JPEG y BMP no tienen canal alfa
+        boolean alfa = !formato.equals("jpg") && !formato.equals("jpeg") && !formato.equals("bmp") && !formato.equals("wbmp");
+        var escalada = new BufferedImage(ancho, alto, alfa ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        var graphics = escalada.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(imagen, 0, 0, ancho, alto, alfa ? null : Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return escalada;
+    }
+
+    // Se escribe en un temporal y se mueve, asi nunca se sirve una variante a medio escribir
+    private static void escribir(BufferedImage imagen, String formato, Path destino) throws IOException {
+        Path tmp = Files.createTempFile(destino.getParent(), ".variante-", ".tmp");
+        try {
+            if (!ImageIO.write(imagen, formato, tmp.toFile())) {
+                throw new IOException("No hay escritor para el formato " + formato);
+            }
+            Files.move(tmp, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public Optional<VarianteImagen> getVariante(String nombre) {
+        return variantes.stream().filter(v -> v.nombre().equals(nombre)).findFirst();
+    }
+
+    // Las variantes son ficheros ocultos junto al original: .<original>.<variante>
+    @Override
+    public Path path(Path original, VarianteImagen variante) {
+        return original.resolveSibling("." + original.getFileName() + "." + variante.nombre());
+    }
+
+    @Override
+    public void mover(Path original, Path destino) {
+        for (VarianteImagen variante : variantes) {
+            Path path = path(original, variante);
+            try {
+                if (Files.exists(path)) {
+                    Files.move(path, path(destino, variante), StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException e) {
+                log.warn("No se puede mover la variante " + path.getFileName() + " " + e);
+            }
+        }
+    }
+
+    @Override
+    public void eliminar(Path original) {
+        for (VarianteImagen variante : variantes) {
+            try {
+                Files.deleteIfExists(path(original, variante));
+            } catch (IOException e) {
+                log.warn("No se puede eliminar la variante " + variante.nombre() + " de " + original.getFileName() + " " + e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("Quedan variantes sin generar al parar: " + executor.getQueue().size());
+            executor.shutdownNow();
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package org.example.demofunkos.storage.services;
 
+import org.example.demofunkos.storage.dto.FicheroMetadatos;
+import org.example.demofunkos.storage.models.Fichero;
+import org.example.demofunkos.storage.models.ResultadoPurga;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.core.io.Resource;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
 public interface StorageService {
@@ -11,15 +18,29 @@ public interface StorageService {
 
     String store(MultipartFile file);
 
+    Fichero store(String filename, InputStream inputStream, long maxSize);
+
+    Fichero store(String filename, Path file);
+
     Stream<Path> loadAll();
 
     Path load(String filename);
 
     Resource loadAsResource(String filename);
 
+    FicheroMetadatos loadMetadata(String filename);
+
+    FicheroMetadatos loadMetadata(String filename, String variant);
+
+    Optional<ByteBuffer> loadContent(FicheroMetadatos fichero);
+
     void delete(String filename);
 
     void deleteAll();
 
+    CompletableFuture<ResultadoPurga> deleteAllAsync(int threads);
+
+    long migrate();
+
     String getUrl(String filename);
 }
\ No newline at end of file
@@ -1,22 +1,61 @@
 package org.example.demofunkos.storage.services;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.nio.file.FileVisitResult;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.SimpleFileVisitor;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.extern.slf4j.Slf4j;
 import org.example.demofunkos.storage.controllers.StorageController;
+import org.example.demofunkos.storage.dto.FicheroMetadatos;
+import org.example.demofunkos.storage.exceptions.StorageBadRequest;
 import org.example.demofunkos.storage.exceptions.StorageException;
 import org.example.demofunkos.storage.exceptions.StorageNotFound;
+import org.example.demofunkos.storage.exceptions.StoragePayloadTooLarge;
+import org.example.demofunkos.storage.models.Fichero;
+import org.example.demofunkos.storage.models.ResultadoPurga;
+import org.example.demofunkos.storage.models.VarianteImagen;
+import org.example.demofunkos.storage.repositories.FicheroRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.util.FileSystemUtils;
 import org.springframework.util.StringUtils;
@@ -27,11 +66,46 @@ import org.springframework.web.servlet.mvc.method.annotation.MvcUriComponentsBui
 @Slf4j
 public class StorageServiceImpl implements StorageService {
 
+    private static final String BLOBS_DIR = ".blobs";
+    private static final String REFS_DIR = ".refs";
+    private static final int LOCK_STRIPES = 64;
+    private static final int MAX_SHARD_DEPTH = 4;
+    private static final String PURGE_SUFFIX = ".purga-";
+    private static final int METADATA_CACHE_SIZE = 10_000;
+    private static final Duration METADATA_CACHE_TTL = Duration.ofSeconds(30);
+
     private final Path rootLocation;
+    private final boolean contentAddressed;
+    private final FicheroRepository ficheroRepository;
+    private final int shardDepth;
+    private final ImageVariantService imageVariantService;
+    private final HotFileCache hotFileCache;
+    private final ReentrantLock[] digestLocks = new ReentrantLock[LOCK_STRIPES];
+    // Evita resolver la ruta, leer atributos y calcular el tipo MIME en cada peticion de un fichero muy pedido
+    private final Cache<String, FicheroMetadatos> metadatos = Caffeine.newBuilder()
+            .maximumSize(METADATA_CACHE_SIZE)
+            .expireAfterWrite(METADATA_CACHE_TTL)
+            .build();
 
     @Autowired
-    public StorageServiceImpl(@Value("${upload.root-location}") String path) {
+    public StorageServiceImpl(@Value("${upload.root-location}") String path,
+                              @Value("${upload.content-addressed:false}") boolean contentAddressed,
+                              FicheroRepository ficheroRepository,
+                              @Value("${upload.shard-depth:0}") int shardDepth,
+                              ImageVariantService imageVariantService,
+                              HotFileCache hotFileCache) {
+        if (shardDepth < 0 || shardDepth > MAX_SHARD_DEPTH) {
+            throw new StorageException("upload.shard-depth debe estar entre 0 y " + MAX_SHARD_DEPTH);
+        }
         this.rootLocation = Paths.get(path);
+        this.contentAddressed = contentAddressed;
+        this.ficheroRepository = ficheroRepository;
+        this.shardDepth = shardDepth;
+        this.imageVariantService = imageVariantService;
+        this.hotFileCache = hotFileCache;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            digestLocks[i] = new ReentrantLock();
+        }
     }
 
     @Override
@@ -39,17 +113,66 @@ public class StorageServiceImpl implements StorageService {
         log.info("Inicializando almacenamiento");
         try {
             Files.createDirectories(rootLocation);
+            if (contentAddressed) {
+                reconstruirReferencias();
+            }
         } catch (IOException e) {
             throw new StorageException("No se puede inicializar el almacenamiento " + e);
         }
     }
 
+    // Los blobs estan en disco pero la tabla de nombres puede estar en una base de datos en memoria: cada
+    // nombre deja tambien en disco un fichero con su digest y al arrancar se recuperan los que falten
+    private void reconstruirReferencias() throws IOException {
+        Path refs = rootLocation.resolve(REFS_DIR);
+        if (!Files.isDirectory(refs)) {
+            return;
+        }
+        boolean vacia = ficheroRepository.count() == 0;
+        var recuperados = new ArrayList<Fichero>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(refs, Files::isRegularFile)) {
+            for (Path ref : files) {
+                String nombre = ref.getFileName().toString();
+                if (nombre.startsWith(".") || (!vacia && ficheroRepository.existsById(nombre))) {
+                    continue;
+                }
+                String digest = Files.readString(ref).trim();
+                Path blob = orFlat(blobPath(digest), rootLocation.resolve(BLOBS_DIR).resolve(digest));
+                if (!Files.isRegularFile(blob)) {
+                    log.warn("La referencia " + nombre + " apunta a un contenido que no existe, se descarta");
+                    Files.delete(ref);
+                    continue;
+                }
+                var creado = LocalDateTime.ofInstant(Files.getLastModifiedTime(ref).toInstant(), ZoneId.systemDefault());
+                recuperados.add(new Fichero(nombre, digest, Files.size(blob), creado));
+            }
+        }
+        if (!recuperados.isEmpty()) {
+            ficheroRepository.saveAll(recuperados);
+            log.info("Recuperadas " + recuperados.size() + " referencias a contenido desde disco");
+        }
+    }
+
+    private Path refPath(String storedFilename) {
+        return rootLocation.resolve(REFS_DIR).resolve(storedFilename);
+    }
+
+    private void guardarReferencia(String storedFilename, String digest) throws IOException {
+        Path refs = rootLocation.resolve(REFS_DIR);
+        Files.createDirectories(refs);
+        Path tmp = Files.createTempFile(refs, ".ref-", ".tmp");
+        try {
+            Files.writeString(tmp, digest);
+            Files.move(tmp, refPath(storedFilename), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
     @Override
     public String store(MultipartFile file) {
         String filename = StringUtils.cleanPath(file.getOriginalFilename());
-        String extension = StringUtils.getFilenameExtension(filename);
-        String justFilename = filename.replace("." + extension, "");
-        String storedFilename = System.currentTimeMillis() + "_" + justFilename + "." + extension;
+        String storedFilename = storedFilename(filename);
 
         try {
             if (file.isEmpty()) {
@@ -61,10 +184,17 @@ public class StorageServiceImpl implements StorageService {
                                 + filename);
             }
 
+            if (contentAddressed) {
+                return storeContentAddressed(file, filename, storedFilename);
+            }
+
             try (InputStream inputStream = file.getInputStream()) {
                 log.info("Almacenando fichero " + filename + " como " + storedFilename);
-                Files.copy(inputStream, this.rootLocation.resolve(storedFilename),
+                Path target = shardedPath(storedFilename);
+                Files.createDirectories(target.getParent());
+                Files.copy(inputStream, target,
                         StandardCopyOption.REPLACE_EXISTING);
+                generarVariantes(target);
                 return storedFilename;
             }
 
@@ -73,22 +203,284 @@ public class StorageServiceImpl implements StorageService {
         }
     }
 
+    // Se calcula el SHA-256 mientras se escribe en un temporal y el contenido se guarda una sola vez por digest
+    private String storeContentAddressed(MultipartFile file, String filename, String storedFilename) throws IOException {
+        Path blobs = rootLocation.resolve(BLOBS_DIR);
+        Files.createDirectories(blobs);
+        Path tmp = Files.createTempFile(blobs, ".upload-", ".tmp");
+        try {
+            MessageDigest sha256 = sha256();
+            long size;
+            try (InputStream inputStream = new DigestInputStream(file.getInputStream(), sha256)) {
+                size = Files.copy(inputStream, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String digest = HexFormat.of().formatHex(sha256.digest());
+            commitContentAddressed(tmp, digest, size, filename, storedFilename);
+            return storedFilename;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // Un solo paso por los datos: el cuerpo de la peticion se escribe en un temporal junto al destino final,
+    // contando bytes y calculando el SHA-256 a la vez, y despues solo se renombra
+    @Override
+    public Fichero store(String originalFilename, InputStream inputStream, long maxSize) {
+        String filename = validFilename(originalFilename);
+        String storedFilename = storedFilename(filename);
+
+        try {
+            Path dir = contentAddressed ? rootLocation.resolve(BLOBS_DIR) : shardedPath(storedFilename).getParent();
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, ".upload-", ".tmp");
+            try {
+                MessageDigest sha256 = sha256();
+                long size;
+                try (InputStream in = new DigestInputStream(new LimitedInputStream(inputStream, maxSize), sha256)) {
+                    size = Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+                }
+                if (size == 0) {
+                    throw new StorageBadRequest("Fichero vacío " + filename);
+                }
+                return commit(tmp, filename, storedFilename, HexFormat.of().formatHex(sha256.digest()), size);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            throw new StorageException("Fallo al almacenar fichero " + filename + " " + e);
+        }
+    }
+
+    // Para ficheros ya escritos dentro del almacenamiento (subidas por partes): solo se lee para el digest y se renombra
+    @Override
+    public Fichero store(String originalFilename, Path file) {
+        String filename = validFilename(originalFilename);
+        String storedFilename = storedFilename(filename);
+        try {
+            MessageDigest sha256 = sha256();
+            long size;
+            try (InputStream in = new DigestInputStream(Files.newInputStream(file), sha256)) {
+                size = in.transferTo(OutputStream.nullOutputStream());
+            }
+            if (size == 0) {
+                throw new StorageBadRequest("Fichero vacío " + filename);
+            }
+            return commit(file, filename, storedFilename, HexFormat.of().formatHex(sha256.digest()), size);
+        } catch (IOException e) {
+            throw new StorageException("Fallo al almacenar fichero " + filename + " " + e);
+        }
+    }
+
+    private static String validFilename(String originalFilename) {
+        String filename = StringUtils.cleanPath(originalFilename == null ? "" : originalFilename);
+        if (filename.isBlank() || filename.contains("..") || filename.contains("/")) {
+            throw new StorageBadRequest("Nombre de fichero no valido: " + filename);
+        }
+        return filename;
+    }
+
+    // Los ficheros sin extension (README, LICENSE) se guardan tambien sin ella
+    private String storedFilename(String filename) {
+        String extension = StringUtils.getFilenameExtension(filename);
+        return (contentAddressed ? UUID.randomUUID() : String.valueOf(System.currentTimeMillis()))
+                + "_" + StringUtils.stripFilenameExtension(filename) + (extension == null ? "" : "." + extension);
+    }
+
+    private Fichero commit(Path tmp, String filename, String storedFilename, String digest, long size) throws IOException {
+        if (contentAddressed) {
+            commitContentAddressed(tmp, digest, size, filename, storedFilename);
+        } else {
+            log.info("Almacenando fichero " + filename + " como " + storedFilename);
+            Path target = shardedPath(storedFilename);
+            Files.createDirectories(target.getParent());
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            generarVariantes(target);
+        }
+        return new Fichero(storedFilename, digest, size, LocalDateTime.now());
+    }
+
+    private void commitContentAddressed(Path tmp, String digest, long size, String filename, String storedFilename) throws IOException {
+        var lock = lockFor(digest);
+        lock.lock();
+        try {
+            Path blob = blobPath(digest);
+            if (Files.exists(blob)) {
+                log.info("Fichero " + filename + " ya almacenado con digest " + digest + ", se reutiliza");
+            } else {
+                Files.createDirectories(blob.getParent());
+                Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+                generarVariantes(blob);
+                log.info("Almacenando fichero " + filename + " con digest " + digest);
+            }
+            guardarReferencia(storedFilename, digest);
+            ficheroRepository.save(new Fichero(storedFilename, digest, size, LocalDateTime.now()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Corta la subida en cuanto supera el limite, sin esperar a tener todo el cuerpo
+    private static class LimitedInputStream extends FilterInputStream {
+        private final long maxSize;
+        private long count;
+
+        LimitedInputStream(InputStream in, long maxSize) {
+            super(in);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(int n) {
+            count += n;
+            if (count > maxSize) {
+                throw new StoragePayloadTooLarge("El fichero supera el tamaño maximo de " + maxSize + " bytes");
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new StorageException("SHA-256 no disponible " + e);
+        }
+    }
+
+    private ReentrantLock lockFor(String digest) {
+        return digestLocks[Math.floorMod(digest.hashCode(), LOCK_STRIPES)];
+    }
+
+    private Path blobPath(String digest) {
+        return shard(rootLocation.resolve(BLOBS_DIR), digest, digest);
+    }
+
+    private Path shardedPath(String filename) {
+        if (shardDepth == 0) {
+            return rootLocation.resolve(filename);
+        }
+        return shard(rootLocation, HexFormat.of().formatHex(sha256().digest(filename.getBytes(StandardCharsets.UTF_8))), filename);
+    }
+
+    // Un subdirectorio de dos caracteres hexadecimales por nivel: ab/cd/fichero
+    private Path shard(Path base, String hash, String filename) {
+        Path dir = base;
+        for (int level = 0; level < shardDepth; level++) {
+            dir = dir.resolve(hash.substring(level * 2, level * 2 + 2));
+        }
+        return dir.resolve(filename);
+    }
+
+    @Override
+    public long migrate() {
+        if (shardDepth == 0) {
+            return 0;
+        }
+        log.info("Migrando ficheros al directorio particionado");
+        long migrated = 0;
+        migrated += migrateFlat(rootLocation, this::shardedPath);
+        Path blobs = rootLocation.resolve(BLOBS_DIR);
+        if (Files.isDirectory(blobs)) {
+            migrated += migrateFlat(blobs, this::blobPath);
+        }
+        metadatos.invalidateAll();
+        if (hotFileCache != null) {
+            hotFileCache.invalidateAll();
+        }
+        log.info("Migrados " + migrated + " ficheros");
+        return migrated;
+    }
+
+    private long migrateFlat(Path dir, Function<String, Path> target) {
+        long migrated = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, Files::isRegularFile)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(".")) {
+                    continue;
+                }
+                Path destination = target.apply(name);
+                Files.createDirectories(destination.getParent());
+                Files.move(file, destination, StandardCopyOption.ATOMIC_MOVE);
+                if (imageVariantService != null) {
+                    imageVariantService.mover(file, destination);
+                }
+                migrated++;
+            }
+        } catch (IOException e) {
+            throw new StorageException("Fallo al migrar ficheros de " + dir + " " + e);
+        }
+        return migrated;
+    }
+
     @Override
     public Stream<Path> loadAll() {
         log.info("Cargando todos los ficheros almacenados");
+        if (contentAddressed) {
+            return ficheroRepository.findAll().stream().map(f -> Paths.get(f.getNombre()));
+        }
+        if (shardDepth > 0) {
+            return loadAllSharded();
+        }
         try {
             return Files.walk(this.rootLocation, 1)
                     .filter(path -> !path.equals(this.rootLocation))
+                    .filter(path -> !path.getFileName().toString().startsWith("."))
                     .map(this.rootLocation::relativize);
         } catch (IOException e) {
             throw new StorageException("Fallo al leer ficheros almacenados " + e);
         }
     }
 
+    // Files.walk recorre los directorios de forma perezosa, no se lista todo el arbol en memoria
+    private Stream<Path> loadAllSharded() {
+        try {
+            return Files.walk(this.rootLocation, shardDepth + 1)
+                    .filter(path -> !path.equals(this.rootLocation))
+                    .filter(path -> !this.rootLocation.relativize(path).getName(0).toString().startsWith("."))
+                    .filter(Files::isRegularFile)
+                    .filter(path -> !path.getFileName().toString().startsWith("."))
+                    .map(Path::getFileName);
+        } catch (IOException e) {
+            throw new StorageException("Fallo al leer ficheros almacenados " + e);
+        }
+    }
+
     @Override
     public Path load(String filename) {
         log.info("Cargando fichero " + filename);
-        return rootLocation.resolve(filename);
+        if (contentAddressed) {
+            var fichero = ficheroRepository.findById(filename);
+            if (fichero.isPresent()) {
+                String digest = fichero.get().getDigest();
+                return orFlat(blobPath(digest), rootLocation.resolve(BLOBS_DIR).resolve(digest));
+            }
+        }
+        return orFlat(shardedPath(filename), rootLocation.resolve(filename));
+    }
+
+    // Ficheros que todavia no se han migrado al directorio particionado
+    private Path orFlat(Path sharded, Path flat) {
+        if (shardDepth > 0 && !Files.exists(sharded) && Files.exists(flat)) {
+            return flat;
+        }
+        return sharded;
     }
 
     @Override
@@ -107,26 +499,146 @@ public class StorageServiceImpl implements StorageService {
         }
     }
 
+    @Override
+    public FicheroMetadatos loadMetadata(String filename) {
+        return metadatos.get(filename, name -> {
+            Path file = load(name);
+            // En modo direccionado por contenido el nombre del blob es el digest, que sirve como ETag fuerte
+            String digest = contentAddressed && !file.getFileName().toString().equals(name)
+                    ? file.getFileName().toString()
+                    : null;
+            return readMetadata(file, name, digest, mediaType(name));
+        });
+    }
+
+    @Override
+    public FicheroMetadatos loadMetadata(String filename, String variant) {
+        if (variant == null) {
+            return loadMetadata(filename);
+        }
+        VarianteImagen variante = Optional.ofNullable(imageVariantService)
+                .flatMap(service -> service.getVariante(variant))
+                .orElseThrow(() -> new StorageBadRequest("Variante de imagen desconocida: " + variant));
+        var cached = metadatos.getIfPresent(filename + "?" + variant);
+        if (cached != null) {
+            return cached;
+        }
+        Path path = imageVariantService.path(loadMetadata(filename).path(), variante);
+        if (!Files.isRegularFile(path)) {
+            // Todavia no generada, o la imagen ya era mas pequena que la variante: se sirve el original sin cachearlo
+            return loadMetadata(filename).enLugarDe(variant);
+        }
+        MediaType mediaType = variante.formato() != null ? mediaType("variante." + variante.formato()) : mediaType(filename);
+        var fichero = readMetadata(path, filename, null, mediaType);
+        metadatos.put(filename + "?" + variant, fichero);
+        return fichero;
+    }
+
+    @Override
+    public Optional<ByteBuffer> loadContent(FicheroMetadatos fichero) {
+        return hotFileCache != null ? hotFileCache.get(fichero) : Optional.empty();
+    }
+
+    private static MediaType mediaType(String filename) {
+        return MediaTypeFactory.getMediaType(filename).orElse(MediaType.APPLICATION_OCTET_STREAM);
+    }
+
+    private static FicheroMetadatos readMetadata(Path file, String filename, String digest, MediaType mediaType) {
+        try {
+            var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                throw new StorageNotFound("No se puede leer fichero: " + filename);
+            }
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            String etag = digest != null
+                    ? "\"" + digest + "\""
+                    : "\"" + Long.toHexString(attributes.size()) + "-" + Long.toHexString(lastModified) + "\"";
+            return new FicheroMetadatos(file, attributes.size(), lastModified, etag, mediaType);
+        } catch (IOException e) {
+            throw new StorageNotFound("No se puede leer fichero: " + filename);
+        }
+    }
+
+    private void generarVariantes(Path original) {
+        if (imageVariantService != null) {
+            imageVariantService.generar(original);
+        }
+    }
+
+    private void evictContent(Path file) {
+        if (hotFileCache != null) {
+            hotFileCache.invalidate(file);
+        }
+    }
+
+    private void invalidateMetadata(String filename) {
+        metadatos.asMap().keySet().removeIf(key -> key.equals(filename) || key.startsWith(filename + "?"));
+    }
+
     @Override
     public void delete(String filename) {
         String justFilename = StringUtils.getFilename(filename);
+        invalidateMetadata(justFilename);
         try {
+            if (contentAddressed && deleteContentAddressed(justFilename)) {
+                return;
+            }
             log.info("Eliminando fichero " + filename);
             Path file = load(justFilename);
             Files.deleteIfExists(file);
+            evictContent(file);
+            if (imageVariantService != null) {
+                imageVariantService.eliminar(file);
+            }
         } catch (IOException e) {
             throw new StorageException("No se puede eliminar el fichero " + filename + " " + e);
         }
     }
 
+    // El contenido solo se borra cuando desaparece el ultimo nombre que lo referencia
+    private boolean deleteContentAddressed(String filename) throws IOException {
+        var fichero = ficheroRepository.findById(filename);
+        if (fichero.isEmpty()) {
+            return false;
+        }
+        String digest = fichero.get().getDigest();
+        var lock = lockFor(digest);
+        lock.lock();
+        try {
+            log.info("Eliminando fichero " + filename);
+            ficheroRepository.deleteById(filename);
+            Files.deleteIfExists(refPath(filename));
+            if (ficheroRepository.countByDigest(digest) == 0) {
+                log.info("Eliminando contenido sin referencias " + digest);
+                Path blob = orFlat(blobPath(digest), rootLocation.resolve(BLOBS_DIR).resolve(digest));
+                Files.deleteIfExists(blob);
+                evictContent(blob);
+                if (imageVariantService != null) {
+                    imageVariantService.eliminar(blob);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
     @Override
     public void deleteAll() {
         log.info("Eliminando todos los ficheros almacenados");
+        metadatos.invalidateAll();
+        if (hotFileCache != null) {
+            hotFileCache.invalidateAll();
+        }
+        if (contentAddressed) {
+            ficheroRepository.deleteAllInBatch();
+        }
 
         try {
 
             Files.walk(this.rootLocation)
                     .filter(path -> !path.equals(this.rootLocation))
+                    .sorted(Comparator.reverseOrder())
                     .forEach(path -> {
                         try {
                             Files.delete(path);
@@ -139,11 +651,200 @@ public class StorageServiceImpl implements StorageService {
         }
     }
 
+    // El directorio se renombra de forma atomica y StorageConfig lo vuelve a crear vacio con init(), asi la aplicacion
+    // puede arrancar y aceptar subidas mientras el contenido antiguo se borra en segundo plano con varios hilos
+    @Override
+    public CompletableFuture<ResultadoPurga> deleteAllAsync(int threads) {
+        log.info("Purgando en segundo plano todos los ficheros almacenados");
+        metadatos.invalidateAll();
+        if (hotFileCache != null) {
+            hotFileCache.invalidateAll();
+        }
+        if (contentAddressed) {
+            ficheroRepository.deleteAllInBatch();
+        }
+
+        // Papeleras de una purga anterior que no llego a terminar
+        List<Path> papeleras = new ArrayList<>(papelerasPendientes());
+        if (Files.exists(rootLocation)) {
+            Path papelera = rootLocation.resolveSibling(rootLocation.getFileName() + PURGE_SUFFIX + System.currentTimeMillis());
+            try {
+                renombrar(rootLocation, papelera);
+                papeleras.add(papelera);
+            } catch (IOException e) {
+                log.warn("No se puede renombrar " + rootLocation + " para purgarlo, se purga en sitio " + e);
+                // Se espera a que termine: en segundo plano borraria tambien las subidas que lleguen despues de init()
+                try {
+                    return CompletableFuture.completedFuture(purgar(papeleras, rootLocation, threads));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return CompletableFuture.failedFuture(ie);
+                }
+            }
+        }
+        if (papeleras.isEmpty()) {
+            return CompletableFuture.completedFuture(ResultadoPurga.VACIO);
+        }
+
+        var resultado = new CompletableFuture<ResultadoPurga>();
+        Thread.ofVirtual().name("ficheros-purga").start(() -> {
+            try {
+                resultado.complete(purgar(papeleras, null, threads));
+            } catch (Throwable e) {
+                log.error("Error al purgar ficheros almacenados", e);
+                resultado.completeExceptionally(e);
+            }
+        });
+        return resultado;
+    }
+
+    void renombrar(Path origen, Path destino) throws IOException {
+        Files.move(origen, destino, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private List<Path> papelerasPendientes() {
+        Path parent = rootLocation.toAbsolutePath().getParent();
+        List<Path> papeleras = new ArrayList<>();
+        if (parent == null || !Files.isDirectory(parent)) {
+            return papeleras;
+        }
+        try (var dirs = Files.newDirectoryStream(parent, rootLocation.getFileName() + PURGE_SUFFIX + "*")) {
+            dirs.forEach(papeleras::add);
+        } catch (IOException e) {
+            log.warn("No se pueden buscar purgas pendientes en " + parent + " " + e);
+        }
+        return papeleras;
+    }
+
+    // enSitio es el directorio vivo cuando no se ha podido renombrar: se vacia pero se conserva
+    private ResultadoPurga purgar(List<Path> papeleras, Path enSitio, int threads) throws InterruptedException {
+        long inicio = System.nanoTime();
+        var purga = new Purga(threads);
+        try {
+            for (Path papelera : papeleras) {
+                purga.purgar(papelera, true);
+            }
+            if (enSitio != null) {
+                purga.purgar(enSitio, false);
+            }
+        } finally {
+            purga.executor.shutdown();
+        }
+        var resultado = new ResultadoPurga(purga.ficheros.sum(), purga.directorios.sum(), purga.fallos.sum(),
+                Duration.ofNanos(System.nanoTime() - inicio));
+        log.info(String.format("Purga completada: %d ficheros y %d directorios en %d ms (%.0f ficheros/s), %d fallos",
+                resultado.ficheros(), resultado.directorios(), resultado.duracion().toMillis(),
+                resultado.ficherosPorSegundo(), resultado.fallos()));
+        return resultado;
+    }
+
+    // Primero los ficheros en lotes repartidos entre los hilos y despues los directorios, del mas profundo al raiz.
+    // Un fallo solo se cuenta y se sigue con el resto
+    private static class Purga {
+        private static final int BATCH_SIZE = 256;
+        private static final int MAX_FAILURES_LOGGED = 10;
+
+        final ExecutorService executor;
+        final Semaphore lotesEnVuelo;
+        final int maxLotes;
+        final LongAdder ficheros = new LongAdder();
+        final LongAdder directorios = new LongAdder();
+        final LongAdder fallos = new LongAdder();
+
+        Purga(int threads) {
+            this.executor = Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("ficheros-purga-", 0).daemon().factory());
+            // Limita los lotes pendientes para no acumular en memoria la lista de todo el arbol
+            this.maxLotes = threads * 4;
+            this.lotesEnVuelo = new Semaphore(maxLotes);
+        }
+
+        void purgar(Path papelera, boolean conRaiz) throws InterruptedException {
+            List<List<Path>> directoriosPorNivel = new ArrayList<>();
+            List<Path> lote = new ArrayList<>(BATCH_SIZE);
+            try {
+                Files.walkFileTree(papelera, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        int nivel = papelera.relativize(dir).toString().isEmpty() ? 0 : papelera.relativize(dir).getNameCount();
+                        while (directoriosPorNivel.size() <= nivel) {
+                            directoriosPorNivel.add(new ArrayList<>());
+                        }
+                        directoriosPorNivel.get(nivel).add(dir);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        lote.add(file);
+                        if (lote.size() == BATCH_SIZE) {
+                            enviar(List.copyOf(lote), ficheros);
+                            lote.clear();
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        fallo(file, e);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                fallo(papelera, e);
+            }
+            enviar(List.copyOf(lote), ficheros);
+            esperar();
+
+            for (int nivel = directoriosPorNivel.size() - 1; nivel >= (conRaiz ? 0 : 1); nivel--) {
+                List<Path> dirs = directoriosPorNivel.get(nivel);
+                for (int i = 0; i < dirs.size(); i += BATCH_SIZE) {
+                    enviar(dirs.subList(i, Math.min(dirs.size(), i + BATCH_SIZE)), directorios);
+                }
+                esperar();
+            }
+        }
+
+        private void enviar(List<Path> paths, LongAdder eliminados) {
+            if (paths.isEmpty()) {
+                return;
+            }
+            lotesEnVuelo.acquireUninterruptibly();
+            executor.execute(() -> {
+                try {
+                    for (Path path : paths) {
+                        try {
+                            Files.delete(path);
+                            eliminados.increment();
+                        } catch (NoSuchFileException e) {
+                            // Ya no estaba, nada que hacer
+                        } catch (IOException e) {
+                            fallo(path, e);
+                        }
+                    }
+                } finally {
+                    lotesEnVuelo.release();
+                }
+            });
+        }
+
+        private void esperar() throws InterruptedException {
+            lotesEnVuelo.acquire(maxLotes);
+            lotesEnVuelo.release(maxLotes);
+        }
+
+        private void fallo(Path path, IOException e) {
+            fallos.increment();
+            if (fallos.sum() <= MAX_FAILURES_LOGGED) {
+                log.warn("No se puede eliminar " + path + " " + e);
+            }
+        }
+    }
+
     @Override
     public String getUrl(String filename) {
         log.info("Obteniendo URL del fichero " + filename);
         return MvcUriComponentsBuilder
-                .fromMethodName(StorageController.class, "serveFile", filename, null)
+                .fromMethodName(StorageController.class, "serveFile", filename, null, null, null)
                 .build().toUriString();
     }
 }
\ No newline at end of file
@@ -0,0 +1,19 @@
+package org.example.demofunkos.storage.services;
+
+import org.example.demofunkos.storage.dto.IniciarSubidaDto;
+import org.example.demofunkos.storage.dto.SesionSubidaDto;
+import org.example.demofunkos.storage.models.Fichero;
+
+import java.io.InputStream;
+
+public interface UploadSessionService {
+    SesionSubidaDto iniciar(IniciarSubidaDto subida);
+
+    SesionSubidaDto subirChunk(String id, int index, InputStream inputStream);
+
+    SesionSubidaDto estado(String id);
+
+    Fichero completar(String id);
+
+    void cancelar(String id);
+}
@@ -0,0 +1,320 @@
+package org.example.demofunkos.storage.services;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.demofunkos.storage.dto.IniciarSubidaDto;
+import org.example.demofunkos.storage.dto.SesionSubidaDto;
+import org.example.demofunkos.storage.exceptions.StorageBadRequest;
+import org.example.demofunkos.storage.exceptions.StorageException;
+import org.example.demofunkos.storage.exceptions.StorageNotFound;
+import org.example.demofunkos.storage.exceptions.StoragePayloadTooLarge;
+import org.example.demofunkos.storage.models.Fichero;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+@Slf4j
+@Service
+public class UploadSessionServiceImpl implements UploadSessionService {
+    static final String UPLOADS_DIR = ".uploads";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MAX_CHUNKS = 100_000;
+
+    private final StorageService storageService;
+    private final Path uploads;
+    private final long maxSize;
+    private final int maxChunkSize;
+    private final int defaultChunkSize;
+    private final int maxSessions;
+    private final Duration expiry;
+    private final Map<String, Sesion> sesiones = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private Thread sweeper;
+
+    // Las partes llegan en cualquier orden y en paralelo: se escriben con lock de lectura y
+    // completar, cancelar o expirar toman el de escritura para no cerrar el fichero a mitad de una parte
+    private static class Sesion {
+        final String id;
+        final String filename;
+        final long tamano;
+        final int chunkSize;
+        final int chunks;
+        final Path part;
+        final Set<Integer> recibidos = ConcurrentHashMap.newKeySet();
+        final Set<Integer> enCurso = ConcurrentHashMap.newKeySet();
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        volatile LocalDateTime ultimaActividad = LocalDateTime.now();
+        boolean cerrada;
+
+        Sesion(String id, String filename, long tamano, int chunkSize, Path part) {
+            this.id = id;
+            this.filename = filename;
+            this.tamano = tamano;
+            this.chunkSize = chunkSize;
+            this.chunks = Math.toIntExact((tamano + chunkSize - 1) / chunkSize);
+            this.part = part;
+        }
+    }
+
+    @Autowired
+    public UploadSessionServiceImpl(StorageService storageService,
+                                    @Value("${upload.root-location}") String rootLocation,
+                                    @Value("${upload.chunked.max-size:2GB}") DataSize maxSize,
+                                    @Value("${upload.chunked.max-chunk-size:16MB}") DataSize maxChunkSize,
+                                    @Value("${upload.chunked.default-chunk-size:8MB}") DataSize defaultChunkSize,
+                                    @Value("${upload.chunked.max-sessions:100}") int maxSessions,
+                                    @Value("${upload.chunked.expiry:1h}") Duration expiry) {
+        this.storageService = storageService;
+        // Dentro del almacenamiento para que el renombrado final sea atomico (mismo sistema de ficheros)
+        this.uploads = Paths.get(rootLocation).resolve(UPLOADS_DIR);
+        this.maxSize = maxSize.toBytes();
+        this.maxChunkSize = Math.toIntExact(maxChunkSize.toBytes());
+        this.defaultChunkSize = Math.toIntExact(Math.min(defaultChunkSize.toBytes(), maxChunkSize.toBytes()));
+        this.maxSessions = maxSessions;
+        this.expiry = expiry;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        // Las sesiones viven en memoria: lo que quede de una ejecucion anterior no se puede reanudar
+        try {
+            FileSystemUtils.deleteRecursively(uploads);
+        } catch (IOException e) {
+            log.warn("No se pueden borrar subidas por partes anteriores " + e);
+        }
+        running = true;
+        sweeper = Thread.ofVirtual().name("ficheros-subidas-expiracion").start(this::run);
+    }
+
+    private void run() {
+        long intervalo = Math.max(1000, Math.min(expiry.toMillis() / 2, Duration.ofMinutes(1).toMillis()));
+        while (running) {
+            try {
+                Thread.sleep(intervalo);
+                expirarSesiones(LocalDateTime.now());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Error al expirar subidas por partes", e);
+            }
+        }
+    }
+
+    int expirarSesiones(LocalDateTime ahora) {
+        int expiradas = 0;
+        for (Sesion sesion : sesiones.values()) {
+            if (expirada(sesion, ahora) && cerrar(sesion, s -> expirada(s, ahora))) {
+                log.info("Subida por partes " + sesion.id + " expirada");
+                expiradas++;
+            }
+        }
+        return expiradas;
+    }
+
+    private boolean expirada(Sesion sesion, LocalDateTime ahora) {
+        return sesion.ultimaActividad.plus(expiry).isBefore(ahora);
+    }
+
+    @Override
+    public SesionSubidaDto iniciar(IniciarSubidaDto subida) {
+        if (subida.getTamano() > maxSize) {
+            throw new StoragePayloadTooLarge("El fichero supera el tamaño maximo de " + maxSize + " bytes");
+        }
+        if (subida.getFilename().contains("..") || subida.getFilename().contains("/")) {
+            throw new StorageBadRequest("Nombre de fichero no valido: " + subida.getFilename());
+        }
+        int chunkSize = subida.getChunkSize() != null ? subida.getChunkSize() : defaultChunkSize;
+        if (chunkSize > maxChunkSize) {
+            throw new StorageBadRequest("El tamaño de cada parte no puede superar " + maxChunkSize + " bytes");
+        }
+        if ((subida.getTamano() + chunkSize - 1) / chunkSize > MAX_CHUNKS) {
+            throw new StorageBadRequest("Una subida no puede tener mas de " + MAX_CHUNKS + " partes");
+        }
+        if (sesiones.size() >= maxSessions) {
+            throw new StorageBadRequest("Demasiadas subidas por partes en curso");
+        }
+        String id = UUID.randomUUID().toString();
+        try {
+            Files.createDirectories(uploads);
+            Path part = Files.createFile(uploads.resolve(id + ".part"));
+            var sesion = new Sesion(id, subida.getFilename(), subida.getTamano(), chunkSize, part);
+            sesiones.put(id, sesion);
+            log.info("Iniciando subida por partes " + id + " de " + subida.getFilename() + " en " + sesion.chunks + " partes");
+            return toDto(sesion);
+        } catch (IOException e) {
+            throw new StorageException("No se puede iniciar la subida de " + subida.getFilename() + " " + e);
+        }
+    }
+
+    @Override
+    public SesionSubidaDto subirChunk(String id, int index, InputStream inputStream) {
+        Sesion sesion = sesion(id);
+        if (index < 0 || index >= sesion.chunks) {
+            throw new StorageBadRequest("Parte " + index + " fuera de rango, la subida tiene " + sesion.chunks + " partes");
+        }
+        long offset = (long) index * sesion.chunkSize;
+        long esperado = Math.min(sesion.chunkSize, sesion.tamano - offset);
+
+        sesion.lock.readLock().lock();
+        try {
+            if (sesion.cerrada) {
+                throw new StorageNotFound("Subida no encontrada: " + id);
+            }
+            // Dos envios a la vez de la misma parte se pisarian la region del fichero
+            if (!sesion.enCurso.add(index)) {
+                throw new StorageBadRequest("La parte " + index + " ya se esta subiendo");
+            }
+            try {
+                sesion.ultimaActividad = LocalDateTime.now();
+                // La escritura empieza a pisar lo que hubiera: la parte no cuenta como recibida hasta que acabe bien
+                sesion.recibidos.remove(index);
+                long escritos = escribir(sesion.part, offset, esperado, inputStream);
+                if (escritos != esperado) {
+                    throw new StorageBadRequest("La parte " + index + " debe tener " + esperado + " bytes y tiene " + escritos);
+                }
+                sesion.recibidos.add(index);
+                sesion.ultimaActividad = LocalDateTime.now();
+            } finally {
+                sesion.enCurso.remove(index);
+            }
+        } catch (IOException e) {
+            throw new StorageException("Fallo al escribir la parte " + index + " de la subida " + id + " " + e);
+        } finally {
+            sesion.lock.readLock().unlock();
+        }
+        return toDto(sesion);
+    }
+
+    // Escrituras posicionales: cada parte va a su offset sin depender del orden de llegada
+    private static long escribir(Path part, long offset, long esperado, InputStream inputStream) throws IOException {
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.WRITE)) {
+            ReadableByteChannel in = Channels.newChannel(inputStream);
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long escritos = 0;
+            while (true) {
+                // Como mucho un byte mas de lo esperado, suficiente para detectar partes demasiado grandes
+                buffer.limit((int) Math.min(BUFFER_SIZE, esperado - escritos + 1));
+                if (in.read(buffer) < 0) {
+                    return escritos;
+                }
+                buffer.flip();
+                if (escritos + buffer.remaining() > esperado) {
+                    return escritos + buffer.remaining();
+                }
+                while (buffer.hasRemaining()) {
+                    escritos += channel.write(buffer, offset + escritos);
+                }
+                buffer.clear();
+            }
+        }
+    }
+
+    @Override
+    public SesionSubidaDto estado(String id) {
+        return toDto(sesion(id));
+    }
+
+    @Override
+    public Fichero completar(String id) {
+        Sesion sesion = sesion(id);
+        sesion.lock.writeLock().lock();
+        try {
+            if (sesion.cerrada) {
+                throw new StorageNotFound("Subida no encontrada: " + id);
+            }
+            if (sesion.recibidos.size() < sesion.chunks) {
+                throw new StorageBadRequest("Faltan " + (sesion.chunks - sesion.recibidos.size()) + " partes de la subida " + id);
+            }
+            log.info("Completando subida por partes " + id);
+            // El fichero se renombra al almacenamiento de una vez, nunca se ve a medio escribir
+            Fichero fichero = storageService.store(sesion.filename, sesion.part);
+            cerrarBloqueada(sesion);
+            return fichero;
+        } finally {
+            sesion.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void cancelar(String id) {
+        if (!cerrar(sesion(id), s -> true)) {
+            throw new StorageNotFound("Subida no encontrada: " + id);
+        }
+        log.info("Subida por partes " + id + " cancelada");
+    }
+
+    private Sesion sesion(String id) {
+        Sesion sesion = sesiones.get(id);
+        if (sesion == null) {
+            throw new StorageNotFound("Subida no encontrada: " + id);
+        }
+        return sesion;
+    }
+
+    // La condicion se vuelve a comprobar con el lock: una parte en curso puede haber renovado la sesion
+    private boolean cerrar(Sesion sesion, Predicate<Sesion> condicion) {
+        sesion.lock.writeLock().lock();
+        try {
+            if (sesion.cerrada || !condicion.test(sesion)) {
+                return false;
+            }
+            cerrarBloqueada(sesion);
+            return true;
+        } finally {
+            sesion.lock.writeLock().unlock();
+        }
+    }
+
+    private void cerrarBloqueada(Sesion sesion) {
+        sesion.cerrada = true;
+        sesiones.remove(sesion.id);
+        try {
+            Files.deleteIfExists(sesion.part);
+        } catch (IOException e) {
+            log.warn("No se puede borrar el fichero temporal de la subida " + sesion.id + " " + e);
+        }
+    }
+
+    private SesionSubidaDto toDto(Sesion sesion) {
+        List<Integer> pendientes = IntStream.range(0, sesion.chunks)
+                .filter(i -> !sesion.recibidos.contains(i))
+                .boxed()
+                .toList();
+        return new SesionSubidaDto(sesion.id, sesion.filename, sesion.tamano, sesion.chunkSize, sesion.chunks,
+                pendientes, sesion.ultimaActividad.plus(expiry));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (sweeper != null) {
+            sweeper.interrupt();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.example.demofunkos.cache.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCache;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheConfigTest {
+
+    private final CacheConfig cacheConfig = new CacheConfig();
+    private CachePolicyProperties properties;
+
+    private final CacheReloader reloader = new CacheReloader() {
+        @Override
+        public String cacheName() {
+            return "funkos";
+        }
+
+        @Override
+        public Object reload(Object key) {
+            return "recargado-" + key;
+        }
+    };
+
+    @BeforeEach
+    void setUp() {
+        properties = new CachePolicyProperties();
+        properties.getDefaults().setMaximumSize(5);
+
+        var funkos = new CachePolicyProperties.Policy();
+        funkos.setMaximumSize(2);
+        funkos.setExpireAfterWrite(Duration.ofMinutes(10));
+        funkos.setRefreshAfterWrite(Duration.ofMinutes(1));
+        properties.getPolicies().put("funkos", funkos);
+
+        var categorias = new CachePolicyProperties.Policy();
+        categorias.setMaximumSize(3);
+        categorias.setRefreshAfterWrite(Duration.ofMinutes(1));
+        properties.getPolicies().put("categorias", categorias);
+    }
+
+    private Cache<Object, Object> nativeCache(String name) {
+        var cacheManager = cacheConfig.cacheManager(properties, List.of(reloader));
+        return ((CaffeineCache) cacheManager.getCache(name)).getNativeCache();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void appliesPolicyPerCache() {
+        var funkos = nativeCache("funkos");
+
+        assertAll(
+                () -> assertEquals(2, funkos.policy().eviction().orElseThrow().getMaximum()),
+                () -> assertEquals(Duration.ofMinutes(10), funkos.policy().expireAfterWrite().orElseThrow().getExpiresAfter()),
+                () -> assertEquals(Duration.ofMinutes(1), funkos.policy().refreshAfterWrite().orElseThrow().getRefreshesAfter()),
+                () -> assertTrue(funkos.policy().isRecordingStats()),
+                () -> assertInstanceOf(LoadingCache.class, funkos),
+                () -> assertNull(((LoadingCache<Object, Object>) funkos).get("1"))
+        );
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void refreshUsesReloader() throws Exception {
+        var funkos = (LoadingCache<Object, Object>) nativeCache("funkos");
+        funkos.put("1", "viejo");
+
+        var recargado = funkos.refresh("1").get();
+
+        assertEquals("recargado-1", recargado);
+    }
+
+    @Test
+    void refreshWithoutReloaderIsIgnored() {
+        var categorias = nativeCache("categorias");
+
+        assertAll(
+                () -> assertEquals(3, categorias.policy().eviction().orElseThrow().getMaximum()),
+                () -> assertTrue(categorias.policy().refreshAfterWrite().isEmpty())
+        );
+    }
+
+    @Test
+    void unknownCachesUseDefaults() {
+        var otra = nativeCache("otra");
+
+        assertAll(
+                () -> assertEquals(5, otra.policy().eviction().orElseThrow().getMaximum()),
+                () -> assertTrue(otra.policy().isRecordingStats())
+        );
+    }
+
+    @Test
+    void recordsStatsAndEvictsWhenFull() {
+        var funkos = nativeCache("funkos");
+
+        funkos.put("1", "a");
+        funkos.getIfPresent("1");
+        funkos.getIfPresent("2");
+        for (int i = 0; i < 20; i++) {
+            funkos.put(String.valueOf(i), "v" + i);
+        }
+        funkos.cleanUp();
+
+        var stats = funkos.stats();
+        assertAll(
+                () -> assertEquals(1, stats.hitCount()),
+                () -> assertEquals(1, stats.missCount()),
+                () -> assertTrue(stats.evictionCount() > 0),
+                () -> assertTrue(funkos.estimatedSize() <= 2)
+        );
+    }
+}
@@ -0,0 +1,130 @@
+package org.example.demofunkos.cache.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonSnapshotTest {
+
+    private final JsonSnapshot snapshot = new JsonSnapshot("test", new ObjectMapper());
+
+    @Test
+    void getReusesSnapshotUntilInvalidated() {
+        var loads = new AtomicInteger();
+
+        var first = snapshot.get(() -> List.of("a", loads.incrementAndGet()));
+        var second = snapshot.get(() -> List.of("b", loads.incrementAndGet()));
+        snapshot.invalidate();
+        var third = snapshot.get(() -> List.of("c", loads.incrementAndGet()));
+
+        assertAll(
+                () -> assertSame(first, second),
+                () -> assertEquals("[\"a\",1]", new String(first.json())),
+                () -> assertEquals("[\"c\",2]", new String(third.json())),
+                () -> assertEquals(2, loads.get())
+        );
+    }
+
+    @Test
+    void invalidateDuringRebuildForcesAnotherRebuild() {
+        var loads = new AtomicInteger();
+
+        var stale = snapshot.get(() -> {
+            snapshot.invalidate();
+            return List.of(loads.incrementAndGet());
+        });
+        var fresh = snapshot.get(() -> List.of(loads.incrementAndGet()));
+
+        assertAll(
+                () -> assertEquals("[1]", new String(stale.json())),
+                () -> assertEquals("[2]", new String(fresh.json()))
+        );
+    }
+
+    @Test
+    void concurrentReadersTriggerSingleRebuild() throws Exception {
+        var loads = new AtomicInteger();
+        var start = new CountDownLatch(1);
+
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            List<Future<JsonSnapshot.Snapshot>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return snapshot.get(() -> {
+                        loads.incrementAndGet();
+                        try {
+                            Thread.sleep(50);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return List.of("x");
+                    });
+                }));
+            }
+            start.countDown();
+            for (var result : results) {
+                assertEquals("[\"x\"]", new String(result.get().json()));
+            }
+        }
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void invalidateInsideTransactionWaitsForCommit() throws Exception {
+        var transactionTemplate = new TransactionTemplate(new AbstractPlatformTransactionManager() {
+            @Override
+            protected Object doGetTransaction() {
+                return new Object();
+            }
+
+            @Override
+            protected void doBegin(Object transaction, TransactionDefinition definition) {
+            }
+
+            @Override
+            protected void doCommit(DefaultTransactionStatus status) {
+            }
+
+            @Override
+            protected void doRollback(DefaultTransactionStatus status) {
+            }
+        });
+        var confirmado = new AtomicReference<>("viejo");
+        snapshot.get(confirmado::get);
+
+        try (var executor = Executors.newSingleThreadExecutor()) {
+            var durante = transactionTemplate.execute(status -> {
+                snapshot.invalidate();
+                // Otro hilo lee mientras la transaccion sigue abierta y solo ve lo confirmado
+                try {
+                    return executor.submit(() -> snapshot.get(confirmado::get)).get();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    confirmado.set("nuevo");
+                }
+            });
+            var despues = snapshot.get(confirmado::get);
+
+            assertAll(
+                    () -> assertEquals("\"viejo\"", new String(durante.json())),
+                    () -> assertEquals("\"nuevo\"", new String(despues.json()))
+            );
+        }
+    }
+}
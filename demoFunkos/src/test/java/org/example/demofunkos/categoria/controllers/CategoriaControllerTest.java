@@ -103,6 +103,22 @@ class CategoriaControllerTest {
         verify(service, times(1)).getById("12d45756-3895-49b2-90d3-c4a12d5ee081");
     }
 
+    @Test
+    void getByIdNotModified() throws Exception {
+        when(service.getById(categoriaTest.getId().toString())).thenReturn(categoriaTest);
+
+        MockHttpServletResponse first = mvc.perform(get(myEndpoint + "/" + categoriaTest.getId())).andReturn().getResponse();
+        MockHttpServletResponse second = mvc.perform(
+                        get(myEndpoint + "/" + categoriaTest.getId()).header("If-None-Match", first.getHeader("ETag")))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertNotNull(first.getHeader("ETag")),
+                () -> assertEquals(HttpStatus.NOT_MODIFIED.value(), second.getStatus()),
+                () -> assertEquals("", second.getContentAsString())
+        );
+    }
+
     @Test
     void save() throws Exception {
         CategoriaDto nuevoCategoria = new CategoriaDto();
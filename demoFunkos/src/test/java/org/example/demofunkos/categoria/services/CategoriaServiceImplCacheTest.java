@@ -0,0 +1,142 @@
+package org.example.demofunkos.categoria.services;
+
+import org.example.demofunkos.categoria.dto.CategoriaDto;
+import org.example.demofunkos.categoria.models.Categoria;
+import org.example.demofunkos.categoria.repositories.CategoriaRepository;
+import org.example.demofunkos.funkos.models.Funko;
+import org.example.demofunkos.funkos.repositories.FunkoRepository;
+import org.example.demofunkos.funkos.services.FunkoService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+class CategoriaServiceImplCacheTest {
+    private static final UUID ID = UUID.fromString("12d45756-3895-49b2-90d3-c4a12d5ee081");
+
+    @Autowired
+    private CategoriaServiceImpl service;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private FunkoService funkoService;
+
+    @MockBean
+    private CategoriaRepository repository;
+
+    @MockBean
+    private FunkoRepository funkoRepository;
+
+    @BeforeEach
+    void setUp() {
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+
+        when(repository.findByNombre(any())).thenReturn(Optional.empty());
+        when(repository.save(any(Categoria.class))).thenAnswer(invocation -> {
+            Categoria categoria = invocation.getArgument(0);
+            if (categoria.getId() == null) {
+                categoria.setId(ID);
+            }
+            return categoria;
+        });
+    }
+
+    private CategoriaDto categoriaDto(String nombre, Boolean activado) {
+        CategoriaDto dto = new CategoriaDto();
+        dto.setNombre(nombre);
+        dto.setActivado(activado);
+        return dto;
+    }
+
+    @Test
+    void getByIdAfterSaveIsServedFromCache() {
+        service.save(categoriaDto("DISNEY", null));
+        clearInvocations(repository);
+
+        var result = service.getById(ID.toString());
+        var byNombre = service.getByNombre("DISNEY");
+
+        assertAll(
+                () -> assertEquals("DISNEY", result.getNombre()),
+                () -> assertEquals(ID, byNombre.getId())
+        );
+        verify(repository, never()).findById(any());
+        verify(repository, never()).findByNombre(any());
+    }
+
+    @Test
+    void getByIdAfterUpdateReturnsFreshData() {
+        var saved = service.save(categoriaDto("DISNEY", null));
+        var updatedAt = saved.getUpdatedAt();
+        when(repository.findById(ID)).thenReturn(Optional.of(saved));
+        service.update(ID.toString(), categoriaDto("MARVEL", null));
+        clearInvocations(repository);
+
+        var result = service.getById(ID.toString());
+
+        assertAll(
+                () -> assertEquals("MARVEL", result.getNombre()),
+                () -> assertNotEquals(updatedAt, result.getUpdatedAt())
+        );
+        verify(repository, never()).findById(any());
+    }
+
+    @Test
+    void updateEvictsOldNombre() {
+        var saved = service.save(categoriaDto("DISNEY", null));
+        when(repository.findById(ID)).thenReturn(Optional.of(saved));
+        service.update(ID.toString(), categoriaDto("MARVEL", null));
+        clearInvocations(repository);
+
+        assertThrows(ResponseStatusException.class, () -> service.getByNombre("DISNEY"));
+        verify(repository, times(1)).findByNombre("DISNEY");
+    }
+
+    @Test
+    void getByIdAfterDeleteReturnsDeactivatedCategoria() {
+        var saved = service.save(categoriaDto("DISNEY", null));
+        when(repository.findByIdAndActivadoTrue(ID)).thenReturn(Optional.of(saved));
+        service.delete(ID.toString(), categoriaDto(null, false));
+        clearInvocations(repository);
+
+        var result = service.getById(ID.toString());
+
+        assertFalse(result.getActivado());
+        verify(repository, never()).findById(any());
+    }
+
+    @Test
+    void updateEvictsCachedFunkosWithTheOldCategoria() {
+        var saved = service.save(categoriaDto("DISNEY", null));
+        var funko = new Funko(5L, "Mickey", 10.99, saved, LocalDateTime.now(), LocalDateTime.now());
+        when(funkoRepository.findById(5L)).thenReturn(Optional.of(funko));
+        when(funkoRepository.findByNombre("Mickey")).thenReturn(Optional.of(funko));
+        funkoService.getById("5");
+        funkoService.getByNombre("Mickey");
+
+        when(repository.findById(ID)).thenReturn(Optional.of(saved));
+        var updated = service.update(ID.toString(), categoriaDto("PIXAR", null));
+        var actualizado = new Funko(5L, "Mickey", 10.99, updated, funko.getCreatedAt(), funko.getUpdatedAt());
+        when(funkoRepository.findById(5L)).thenReturn(Optional.of(actualizado));
+        when(funkoRepository.findByNombre("Mickey")).thenReturn(Optional.of(actualizado));
+
+        assertAll(
+                () -> assertEquals("PIXAR", funkoService.getById("5").getCategoria().getNombre()),
+                () -> assertEquals("PIXAR", funkoService.getByNombre("Mickey").getCategoria().getNombre())
+        );
+    }
+}
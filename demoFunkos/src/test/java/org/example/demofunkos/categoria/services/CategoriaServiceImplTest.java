@@ -1,5 +1,6 @@
 package org.example.demofunkos.categoria.services;
 
+import org.example.demofunkos.cache.services.JsonSnapshot;
 import org.example.demofunkos.categoria.dto.CategoriaDto;
 import org.example.demofunkos.categoria.mappers.CategoriaMapper;
 import org.example.demofunkos.categoria.models.Categoria;
@@ -8,7 +9,6 @@ import org.example.demofunkos.categoria.validator.CategoriaValidator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
@@ -32,13 +32,20 @@ class CategoriaServiceImplTest {
     @Mock
     private CategoriaValidator validator;
 
-    @InjectMocks
+    @Mock
+    private JsonSnapshot categoriasSnapshot;
+
+    @Mock
+    private JsonSnapshot funkosSnapshot;
+
     private CategoriaServiceImpl service;
 
     private Categoria categoriaTest;
 
     @BeforeEach
     void setUp() {
+        service = new CategoriaServiceImpl(repository, mapper, validator, categoriasSnapshot, funkosSnapshot);
+
         categoriaTest = new Categoria();
         categoriaTest.setId(UUID.fromString("12d45756-3895-49b2-90d3-c4a12d5ee081"));
         categoriaTest.setNombre("DISNEY");
@@ -161,6 +168,7 @@ class CategoriaServiceImplTest {
 
         verify(repository, times(1)).save(categoria);
         verify(mapper, times(1)).toCategoria(nuevaCategoria);
+        verify(categoriasSnapshot, times(1)).invalidate();
     }
 
     @Test
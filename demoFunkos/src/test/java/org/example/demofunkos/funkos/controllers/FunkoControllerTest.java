@@ -3,9 +3,14 @@ package org.example.demofunkos.funkos.controllers;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.example.demofunkos.categoria.models.Categoria;
+import org.example.demofunkos.funkos.dto.FunkoCambiosDto;
 import org.example.demofunkos.funkos.dto.FunkoDto;
+import org.example.demofunkos.funkos.dto.FunkoImportResultDto;
+import org.example.demofunkos.funkos.dto.FunkoPageDto;
+import org.example.demofunkos.funkos.dto.FunkoResumenDto;
 import org.example.demofunkos.funkos.mappers.FunkoMapper;
 import org.example.demofunkos.funkos.models.Funko;
+import org.example.demofunkos.funkos.services.FunkoImportService;
 import org.example.demofunkos.funkos.services.FunkoServiceImpl;
 
 import static org.mockito.Mockito.*;
@@ -24,11 +29,15 @@ import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -41,6 +50,9 @@ class FunkoControllerTest {
     @MockBean
     FunkoServiceImpl service;
 
+    @MockBean
+    FunkoImportService importService;
+
     @Autowired
     MockMvc mvc;
 
@@ -89,6 +101,97 @@ class FunkoControllerTest {
         verify(service, times(1)).getAll();
     }
 
+    @Test
+    void getAllNotModified() throws Exception {
+        when(service.getAll()).thenReturn(List.of(funkoTest));
+
+        MockHttpServletResponse first = mvc.perform(get(myEndpoint)).andReturn().getResponse();
+        MockHttpServletResponse second = mvc.perform(
+                get(myEndpoint).header("If-None-Match", first.getHeader("ETag")))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertNotNull(first.getHeader("ETag")),
+                () -> assertEquals(HttpStatus.NOT_MODIFIED.value(), second.getStatus()),
+                () -> assertEquals(0, second.getContentLength())
+        );
+    }
+
+    @Test
+    void getPage() throws Exception {
+        var resumen = new FunkoResumenDto(1L, "Darth Vader", 10.99, "PELICULA", null, null);
+        when(service.getPage(null, 1, "asc")).thenReturn(new FunkoPageDto(List.of(resumen), 1, "asc", "YXNjOjE", true));
+
+        MockHttpServletResponse response = mvc.perform(
+                get(myEndpoint + "?size=1")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        FunkoPageDto res = objectMapper.readValue(response.getContentAsString(), FunkoPageDto.class);
+
+        assertAll(
+                () -> assertEquals(response.getStatus(), HttpStatus.OK.value()),
+                () -> assertEquals(1, res.content().size()),
+                () -> assertEquals(resumen.id(), res.content().get(0).id()),
+                () -> assertEquals(categoriaTest.getNombre(), res.content().get(0).categoria()),
+                () -> assertEquals("YXNjOjE", res.nextCursor()),
+                () -> assertTrue(res.hasNext())
+        );
+
+        verify(service, times(1)).getPage(null, 1, "asc");
+        verify(service, never()).getAll();
+    }
+
+    @Test
+    void getCambios() throws Exception {
+        var since = LocalDateTime.of(2024, 1, 1, 10, 0);
+        var resumen = new FunkoResumenDto(1L, "Darth Vader", 10.99, "PELICULA", null, since.plusMinutes(1));
+        when(service.getCambios(since, null, 500))
+                .thenReturn(new FunkoCambiosDto(List.of(resumen), List.of(2L), since.plusMinutes(1), 1L, false));
+
+        MockHttpServletResponse response = mvc.perform(
+                get(myEndpoint + "/changes?since=2024-01-01T10:00:00")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        FunkoCambiosDto res = objectMapper.copy().findAndRegisterModules().readValue(response.getContentAsString(), FunkoCambiosDto.class);
+
+        assertAll(
+                () -> assertEquals(HttpStatus.OK.value(), response.getStatus()),
+                () -> assertEquals(1, res.cambios().size()),
+                () -> assertEquals(List.of(2L), res.borrados()),
+                () -> assertEquals(since.plusMinutes(1), res.since()),
+                () -> assertEquals(1L, res.afterId())
+        );
+
+        verify(service, times(1)).getCambios(since, null, 500);
+    }
+
+    @Test
+    void export() throws Exception {
+        when(service.exportAll(any())).thenAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(0);
+            out.write("{\"id\":1}\n{\"id\":2}\n".getBytes());
+            return 2L;
+        });
+
+        var result = mvc.perform(get(myEndpoint + "/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        MockHttpServletResponse response = mvc.perform(asyncDispatch(result))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(response.getStatus(), HttpStatus.OK.value()),
+                () -> assertEquals(MediaType.APPLICATION_NDJSON_VALUE, response.getContentType()),
+                () -> assertEquals("{\"id\":1}\n{\"id\":2}\n", response.getContentAsString()),
+                () -> assertEquals(Duration.ofMinutes(30).toMillis(), result.getRequest().getAsyncContext().getTimeout())
+        );
+
+        verify(service, times(1)).exportAll(any());
+    }
+
     @Test
     void getById() throws Exception {
         when(service.getById(String.valueOf(1L))).thenReturn(funkoTest);
@@ -111,6 +214,45 @@ class FunkoControllerTest {
         verify(service, times(1)).getById(String.valueOf(1L));
     }
 
+    @Test
+    void getByIdNotModified() throws Exception {
+        when(service.getById(String.valueOf(1L))).thenReturn(funkoTest);
+
+        MockHttpServletResponse first = mvc.perform(get(myEndpoint + "/1")).andReturn().getResponse();
+        MockHttpServletResponse second = mvc.perform(
+                get(myEndpoint + "/1").header("If-None-Match", first.getHeader("ETag")))
+                .andReturn().getResponse();
+        funkoTest.setUpdatedAt(funkoTest.getUpdatedAt().plusSeconds(1));
+        MockHttpServletResponse third = mvc.perform(
+                get(myEndpoint + "/1").header("If-None-Match", first.getHeader("ETag")))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(HttpStatus.OK.value(), first.getStatus()),
+                () -> assertEquals(HttpStatus.NOT_MODIFIED.value(), second.getStatus()),
+                () -> assertEquals("", second.getContentAsString()),
+                () -> assertEquals(HttpStatus.OK.value(), third.getStatus()),
+                () -> assertNotEquals(first.getHeader("ETag"), third.getHeader("ETag"))
+        );
+    }
+
+    @Test
+    void getByIdChangesETagWhenOnlyCategoriaChanges() throws Exception {
+        categoriaTest.setUpdatedAt(LocalDateTime.now());
+        when(service.getById(String.valueOf(1L))).thenReturn(funkoTest);
+
+        MockHttpServletResponse first = mvc.perform(get(myEndpoint + "/1")).andReturn().getResponse();
+        categoriaTest.setUpdatedAt(categoriaTest.getUpdatedAt().plusSeconds(1));
+        MockHttpServletResponse second = mvc.perform(
+                get(myEndpoint + "/1").header("If-None-Match", first.getHeader("ETag")))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(HttpStatus.OK.value(), second.getStatus()),
+                () -> assertNotEquals(first.getHeader("ETag"), second.getHeader("ETag"))
+        );
+    }
+
     @Test
     void save() throws Exception {
         Categoria nuevaCategoria = new Categoria();
@@ -144,6 +286,33 @@ class FunkoControllerTest {
         verify(service, times(1)).save(nuevoFunko);
     }
 
+    @Test
+    void importFunkos() throws Exception {
+        FunkoDto nuevoFunko = new FunkoDto();
+        nuevoFunko.setNombre("Mickey Mouse");
+        nuevoFunko.setPrecio(7.95);
+        nuevoFunko.setCategoria("DISNEY");
+
+        when(importService.importAll(List.of(nuevoFunko))).thenReturn(new FunkoImportResultDto(1, 1, List.of(), 5, 200.0));
+
+        MockHttpServletResponse response = mvc.perform(
+                        post(myEndpoint + "/import")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(List.of(nuevoFunko))))
+                .andReturn().getResponse();
+
+        FunkoImportResultDto res = objectMapper.readValue(response.getContentAsString(), FunkoImportResultDto.class);
+
+        assertAll(
+                () -> assertEquals(response.getStatus(), HttpStatus.OK.value()),
+                () -> assertEquals(1, res.total()),
+                () -> assertEquals(1, res.importados()),
+                () -> assertTrue(res.errores().isEmpty())
+        );
+
+        verify(importService, times(1)).importAll(List.of(nuevoFunko));
+    }
+
     @Test
     void update() throws Exception {
         Categoria updatedCategoria = new Categoria();
@@ -0,0 +1,56 @@
+package org.example.demofunkos.funkos.repositories;
+
+import org.example.demofunkos.funkos.models.FunkoBorrado;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class FunkoBorradoRepositoryTest {
+
+    @Autowired
+    private FunkoBorradoRepository repository;
+
+    private final LocalDateTime since = LocalDateTime.of(2030, 1, 1, 10, 0);
+
+    @Test
+    void findBorradosPagesWithTheSameKeysetAsCambios() {
+        repository.saveAll(List.of(
+                new FunkoBorrado(5L, since.plusMinutes(1)),
+                new FunkoBorrado(2L, since.plusMinutes(1)),
+                new FunkoBorrado(9L, since.plusMinutes(2)),
+                new FunkoBorrado(1L, since.plusMinutes(3))
+        ));
+        var hasta = since.plusMinutes(2);
+
+        var primera = repository.findBorrados(since, Long.MAX_VALUE, hasta, Limit.of(2));
+        var ultimo = primera.get(1);
+        var segunda = repository.findBorrados(ultimo.getDeletedAt(), ultimo.getId(), hasta, Limit.of(10));
+
+        assertAll(
+                () -> assertEquals(List.of(2L, 5L), primera.stream().map(FunkoBorrado::getId).toList()),
+                () -> assertEquals(List.of(9L), segunda.stream().map(FunkoBorrado::getId).toList())
+        );
+    }
+
+    @Test
+    void deleteAnterioresAPrunesOldTombstones() {
+        repository.saveAll(List.of(
+                new FunkoBorrado(1L, since.minusDays(8)),
+                new FunkoBorrado(2L, since)
+        ));
+
+        int borrados = repository.deleteAnterioresA(since.minusDays(7));
+
+        assertAll(
+                () -> assertEquals(1, borrados),
+                () -> assertEquals(List.of(2L), repository.findAll().stream().map(FunkoBorrado::getId).toList())
+        );
+    }
+}
@@ -1,20 +1,25 @@
 package org.example.demofunkos.funkos.repositories;
 
 import org.example.demofunkos.categoria.models.Categoria;
+import org.example.demofunkos.funkos.dto.FunkoResumenDto;
 import org.example.demofunkos.funkos.models.Funko;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-@DataJpaTest
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
 class FunkoRepositoryTest {
 
     @Autowired
@@ -47,6 +52,139 @@ class FunkoRepositoryTest {
         );
     }
 
+    @Test
+    void findResumenByIdGreaterThan() {
+        var result = repository.findResumenByIdGreaterThan(funkoTest.getId() - 1, Limit.of(10));
+        var empty = repository.findResumenByIdGreaterThan(funkoTest.getId(), Limit.of(10));
+
+        assertAll(
+                () -> assertEquals(1, result.size()),
+                () -> assertEquals(funkoTest.getNombre(), result.get(0).nombre()),
+                () -> assertEquals(categoriaTest.getNombre(), result.get(0).categoria()),
+                () -> assertTrue(empty.isEmpty())
+        );
+    }
+
+    @Test
+    void findResumenByIdLessThan() {
+        var result = repository.findResumenByIdLessThan(funkoTest.getId() + 1, Limit.of(10));
+        var empty = repository.findResumenByIdLessThan(funkoTest.getId(), Limit.of(10));
+
+        assertAll(
+                () -> assertEquals(1, result.size()),
+                () -> assertEquals(funkoTest.getNombre(), result.get(0).nombre()),
+                () -> assertTrue(empty.isEmpty())
+        );
+    }
+
+    @Test
+    void findResumenRespectsLimit() {
+        var categoria = entityManager.persist(new Categoria(null, "ANIME", LocalDateTime.now(), LocalDateTime.now(), true));
+        for (int i = 0; i < 3; i++) {
+            entityManager.persist(new Funko(null, "Goku " + i, 10.0, categoria, LocalDateTime.now(), LocalDateTime.now()));
+        }
+        entityManager.flush();
+
+        var result = repository.findResumenByIdGreaterThan(Long.MIN_VALUE, Limit.of(2));
+
+        assertEquals(2, result.size());
+    }
+
+    @Test
+    void findCambiosOrdersByUpdatedAtAndBreaksTiesById() {
+        var categoria = entityManager.persist(new Categoria(null, "ANIME", LocalDateTime.now(), LocalDateTime.now(), true));
+        var since = LocalDateTime.of(2030, 1, 1, 10, 0);
+        var ids = new java.util.ArrayList<Long>();
+        for (int i = 0; i < 3; i++) {
+            ids.add(entityManager.persist(new Funko(null, "Goku " + i, 10.0, categoria, since, since.plusMinutes(1))).getId());
+        }
+        ids.add(entityManager.persist(new Funko(null, "Vegeta", 10.0, categoria, since, since.plusMinutes(2))).getId());
+        entityManager.flush();
+
+        var hasta = since.plusMinutes(2);
+        var primera = repository.findCambios(since, Long.MAX_VALUE, hasta, Limit.of(2));
+        var ultimo = primera.get(1);
+        var segunda = repository.findCambios(ultimo.updatedAt(), ultimo.id(), hasta, Limit.of(10));
+        var antesDelUltimo = repository.findCambios(ultimo.updatedAt(), ultimo.id(), hasta.minusSeconds(1), Limit.of(10));
+
+        assertAll(
+                () -> assertEquals(List.of(ids.get(0), ids.get(1)), primera.stream().map(FunkoResumenDto::id).toList()),
+                () -> assertEquals(List.of(ids.get(2), ids.get(3)), segunda.stream().map(FunkoResumenDto::id).toList()),
+                () -> assertEquals("ANIME", segunda.get(0).categoria()),
+                () -> assertEquals(List.of(ids.get(2)), antesDelUltimo.stream().map(FunkoResumenDto::id).toList())
+        );
+    }
+
+    @Test
+    void findAllUsesSingleStatement() {
+        persistFunkosWithDistinctCategorias(3);
+        var statistics = resetStatistics();
+
+        var result = repository.findAll();
+        result.forEach(f -> f.getCategoria().getNombre());
+
+        assertAll(
+                () -> assertEquals(4, result.size()),
+                () -> assertEquals(1, statistics.getPrepareStatementCount())
+        );
+    }
+
+    @Test
+    void findByNombreUsesSingleStatement() {
+        persistFunkosWithDistinctCategorias(3);
+        var statistics = resetStatistics();
+
+        var result = repository.findByNombre("Funko 2");
+
+        assertAll(
+                () -> assertEquals("CATEGORIA 2", result.get().getCategoria().getNombre()),
+                () -> assertEquals(1, statistics.getPrepareStatementCount())
+        );
+    }
+
+    @Test
+    void findResumenUsesSingleStatement() {
+        persistFunkosWithDistinctCategorias(3);
+        var statistics = resetStatistics();
+
+        var result = repository.findResumenByIdGreaterThan(Long.MIN_VALUE, Limit.of(10));
+
+        assertAll(
+                () -> assertEquals(4, result.size()),
+                () -> assertEquals(1, statistics.getPrepareStatementCount())
+        );
+    }
+
+    private void persistFunkosWithDistinctCategorias(int count) {
+        for (int i = 0; i < count; i++) {
+            var categoria = entityManager.persist(new Categoria(null, "CATEGORIA " + i, LocalDateTime.now(), LocalDateTime.now(), true));
+            entityManager.persist(new Funko(null, "Funko " + i, 10.0, categoria, LocalDateTime.now(), LocalDateTime.now()));
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private Statistics resetStatistics() {
+        var statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+
+    @Test
+    void streamAllResumen() {
+        try (var rows = repository.streamAllResumen()) {
+            var result = rows.toList();
+
+            assertAll(
+                    () -> assertEquals(1, result.size()),
+                    () -> assertEquals(funkoTest.getId(), result.get(0).id()),
+                    () -> assertEquals(funkoTest.getNombre(), result.get(0).nombre()),
+                    () -> assertEquals(categoriaTest.getNombre(), result.get(0).categoria())
+            );
+        }
+    }
+
     @Test
     void findById() {
         Long id = funkoTest.getId();
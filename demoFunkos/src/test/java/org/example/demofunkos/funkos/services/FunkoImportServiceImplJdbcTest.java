@@ -0,0 +1,96 @@
+package org.example.demofunkos.funkos.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import org.example.demofunkos.cache.services.JsonSnapshot;
+import org.example.demofunkos.categoria.models.Categoria;
+import org.example.demofunkos.categoria.services.CategoriaService;
+import org.example.demofunkos.funkos.dto.FunkoDto;
+import org.example.demofunkos.funkos.dto.FunkoResumenDto;
+import org.example.demofunkos.funkos.models.Funko;
+import org.example.demofunkos.funkos.repositories.FunkoRepository;
+import org.example.demofunkos.notifications.repositories.OutboxRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest
+class FunkoImportServiceImplJdbcTest {
+
+    @Autowired
+    private FunkoRepository repository;
+
+    @Autowired
+    private OutboxRepository outboxRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private final CategoriaService categoriaService = mock(CategoriaService.class);
+
+    private FunkoDto funkoDto(String nombre) {
+        FunkoDto dto = new FunkoDto();
+        dto.setNombre(nombre);
+        dto.setPrecio(10.0);
+        dto.setCategoria("MARVEL");
+        return dto;
+    }
+
+    @Test
+    void importsAreSilentButShowUpInTheChangeFeed() {
+        var categoria = entityManager.persistAndFlush(new Categoria(null, "MARVEL", LocalDateTime.now(), LocalDateTime.now(), true));
+        when(categoriaService.getAll()).thenReturn(List.of(categoria));
+        var service = new FunkoImportServiceImpl(repository, categoriaService, jdbcTemplate,
+                Validation.buildDefaultValidatorFactory().getValidator(), new ObjectMapper(),
+                new JsonSnapshot("funkos", new ObjectMapper()), 2);
+        var antes = LocalDateTime.now().minusSeconds(1);
+
+        var result = service.importAll(List.of(funkoDto("Iron Man"), funkoDto("Thor"), funkoDto("Hulk")));
+        var cambios = repository.findCambios(antes, Long.MAX_VALUE, LocalDateTime.now().plusSeconds(1), Limit.of(10));
+
+        assertAll(
+                () -> assertEquals(3, result.importados()),
+                () -> assertEquals(0, outboxRepository.count()),
+                () -> assertEquals(List.of("Iron Man", "Thor", "Hulk"), cambios.stream().map(FunkoResumenDto::nombre).toList())
+        );
+    }
+
+    @Test
+    void rowsAreStampedAfterTheBatchesSoSlowImportsStayInTheChangeFeed() {
+        var categoria = entityManager.persistAndFlush(new Categoria(null, "MARVEL", LocalDateTime.now(), LocalDateTime.now(), true));
+        when(categoriaService.getAll()).thenReturn(List.of(categoria));
+        var lento = spy(jdbcTemplate);
+        var finLotes = new AtomicReference<LocalDateTime>();
+        doAnswer(invocation -> {
+            Object result = invocation.callRealMethod();
+            Thread.sleep(20);
+            finLotes.set(LocalDateTime.now());
+            return result;
+        }).when(lento).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+        var service = new FunkoImportServiceImpl(repository, categoriaService, lento,
+                Validation.buildDefaultValidatorFactory().getValidator(), new ObjectMapper(),
+                new JsonSnapshot("funkos", new ObjectMapper()), 2);
+
+        service.importAll(List.of(funkoDto("Iron Man"), funkoDto("Thor"), funkoDto("Hulk")));
+        entityManager.clear();
+
+        var marcas = repository.findAll().stream().map(Funko::getUpdatedAt).toList();
+        assertAll(
+                () -> assertEquals(3, marcas.size()),
+                () -> assertTrue(marcas.stream().noneMatch(marca -> marca.isBefore(finLotes.get())))
+        );
+    }
+}
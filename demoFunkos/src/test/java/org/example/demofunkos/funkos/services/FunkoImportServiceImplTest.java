@@ -0,0 +1,120 @@
+package org.example.demofunkos.funkos.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import org.example.demofunkos.cache.services.JsonSnapshot;
+import org.example.demofunkos.categoria.models.Categoria;
+import org.example.demofunkos.categoria.services.CategoriaService;
+import org.example.demofunkos.funkos.dto.FunkoDto;
+import org.example.demofunkos.funkos.repositories.FunkoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FunkoImportServiceImplTest {
+    @Mock
+    private FunkoRepository repository;
+
+    @Mock
+    private CategoriaService categoriaService;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private JsonSnapshot funkosSnapshot;
+
+    private FunkoImportServiceImpl service;
+
+    private Categoria categoriaTest;
+
+    @BeforeEach
+    void setUp() {
+        categoriaTest = new Categoria();
+        categoriaTest.setId(UUID.fromString("12d45756-3895-49b2-90d3-c4a12d5ee081"));
+        categoriaTest.setNombre("MARVEL");
+        categoriaTest.setActivado(true);
+
+        service = new FunkoImportServiceImpl(repository, categoriaService, jdbcTemplate,
+                Validation.buildDefaultValidatorFactory().getValidator(), new ObjectMapper(), funkosSnapshot, 2);
+    }
+
+    private FunkoDto funkoDto(String nombre, Double precio, String categoria) {
+        FunkoDto dto = new FunkoDto();
+        dto.setNombre(nombre);
+        dto.setPrecio(precio);
+        dto.setCategoria(categoria);
+        return dto;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void importAll() {
+        when(categoriaService.getAll()).thenReturn(List.of(categoriaTest));
+        when(repository.findNombresIn(anyCollection())).thenReturn(Set.of("Existente"));
+
+        var result = service.importAll(List.of(
+                funkoDto("Iron Man", 15.99, "Marvel"),
+                funkoDto("Spider-Man", 13.99, "marvel"),
+                funkoDto("Existente", 10.00, "Marvel"),
+                funkoDto("Iron Man", 15.99, "Marvel"),
+                funkoDto("Harry Potter", 12.49, "Harry Potter"),
+                funkoDto("", 60.00, "Marvel")
+        ));
+
+        ArgumentCaptor<List<Object[]>> filas = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), filas.capture(), eq(2), any(ParameterizedPreparedStatementSetter.class));
+
+        assertAll(
+                () -> assertEquals(6, result.total()),
+                () -> assertEquals(2, result.importados()),
+                () -> assertEquals(4, result.errores().size()),
+                () -> assertEquals(List.of(2, 3, 4, 5), result.errores().stream().map(e -> e.fila()).toList()),
+                () -> assertEquals("El nombre del funko ya existe", result.errores().get(0).error()),
+                () -> assertEquals("La categoria Harry Potter no existe", result.errores().get(2).error()),
+                () -> assertEquals(2, filas.getValue().size()),
+                () -> assertEquals(categoriaTest.getId(), filas.getValue().get(0)[2])
+        );
+
+        verify(categoriaService, times(1)).getAll();
+        verify(repository, times(1)).findNombresIn(anyCollection());
+        verify(funkosSnapshot, times(1)).invalidate();
+    }
+
+    @Test
+    void importFrom() throws IOException {
+        when(categoriaService.getAll()).thenReturn(List.of(categoriaTest));
+        when(repository.findNombresIn(anyCollection())).thenReturn(Set.of());
+
+        String json = """
+                [
+                  {"id": 1, "nombre": "Funko Pop! Marvel: Avengers - Iron Man", "categoria": "Marvel", "precio": 15.99},
+                  {"id": 3, "nombre": "Funko Pop! Marvel: Spider-Man", "categoria": "Marvel", "precio": 13.99}
+                ]
+                """;
+
+        var result = service.importFrom(new ByteArrayInputStream(json.getBytes()));
+
+        assertAll(
+                () -> assertEquals(2, result.total()),
+                () -> assertEquals(2, result.importados()),
+                () -> assertTrue(result.errores().isEmpty())
+        );
+    }
+}
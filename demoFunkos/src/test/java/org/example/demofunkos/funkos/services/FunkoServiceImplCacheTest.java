@@ -0,0 +1,133 @@
+package org.example.demofunkos.funkos.services;
+
+import org.example.demofunkos.categoria.models.Categoria;
+import org.example.demofunkos.categoria.services.CategoriaServiceImpl;
+import org.example.demofunkos.funkos.dto.FunkoDto;
+import org.example.demofunkos.funkos.models.Funko;
+import org.example.demofunkos.funkos.repositories.FunkoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+class FunkoServiceImplCacheTest {
+
+    @Autowired
+    private FunkoService service;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @MockBean
+    private FunkoRepository repository;
+
+    @MockBean
+    private CategoriaServiceImpl categoriaService;
+
+    private Categoria categoriaTest;
+
+    @BeforeEach
+    void setUp() {
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+
+        categoriaTest = new Categoria(UUID.randomUUID(), "PELICULA", LocalDateTime.now(), LocalDateTime.now(), true);
+        when(categoriaService.getByNombre(any())).thenReturn(categoriaTest);
+        when(repository.findByNombre(any())).thenReturn(Optional.empty());
+        when(repository.save(any(Funko.class))).thenAnswer(invocation -> {
+            Funko funko = invocation.getArgument(0);
+            if (funko.getId() == null) {
+                funko.setId(5L);
+            }
+            return funko;
+        });
+    }
+
+    private FunkoDto funkoDto(String nombre, Double precio) {
+        FunkoDto dto = new FunkoDto();
+        dto.setNombre(nombre);
+        dto.setPrecio(precio);
+        dto.setCategoria("PELICULA");
+        return dto;
+    }
+
+    @Test
+    void getByIdAfterSaveIsServedFromCache() {
+        var saved = service.save(funkoDto("Darth Vader", 10.99));
+        clearInvocations(repository);
+
+        var result = service.getById("5");
+
+        assertAll(
+                () -> assertEquals(saved.getId(), result.getId()),
+                () -> assertEquals("Darth Vader", result.getNombre())
+        );
+        verify(repository, never()).findById(any());
+    }
+
+    @Test
+    void getByNombreAfterSaveIsServedFromCache() {
+        service.save(funkoDto("Darth Vader", 10.99));
+        clearInvocations(repository);
+
+        var result = service.getByNombre("Darth Vader");
+
+        assertEquals(5L, result.getId());
+        verify(repository, never()).findByNombre(any());
+    }
+
+    @Test
+    void getByIdAfterUpdateReturnsFreshData() {
+        var saved = service.save(funkoDto("Darth Vader", 10.99));
+        when(repository.findById(5L)).thenReturn(Optional.of(saved));
+        service.update("5", funkoDto("Darth Vader Rojo", 12.99));
+        clearInvocations(repository);
+
+        var result = service.getById("5");
+        var byNombre = service.getByNombre("Darth Vader Rojo");
+
+        assertAll(
+                () -> assertEquals("Darth Vader Rojo", result.getNombre()),
+                () -> assertEquals(12.99, result.getPrecio()),
+                () -> assertEquals(5L, byNombre.getId())
+        );
+        verify(repository, never()).findById(any());
+        verify(repository, never()).findByNombre(any());
+    }
+
+    @Test
+    void updateEvictsOldNombre() {
+        var saved = service.save(funkoDto("Darth Vader", 10.99));
+        when(repository.findById(5L)).thenReturn(Optional.of(saved));
+        service.update("5", funkoDto("Darth Vader Rojo", 12.99));
+        clearInvocations(repository);
+
+        assertThrows(ResponseStatusException.class, () -> service.getByNombre("Darth Vader"));
+        verify(repository, times(1)).findByNombre("Darth Vader");
+    }
+
+    @Test
+    void deleteEvictsEntries() {
+        var saved = service.save(funkoDto("Darth Vader", 10.99));
+        when(repository.findById(5L)).thenReturn(Optional.of(saved));
+        service.delete("5");
+        when(repository.findById(5L)).thenReturn(Optional.empty());
+        clearInvocations(repository);
+
+        assertThrows(ResponseStatusException.class, () -> service.getById("5"));
+        assertThrows(ResponseStatusException.class, () -> service.getByNombre("Darth Vader"));
+        verify(repository, times(1)).findById(5L);
+        verify(repository, times(1)).findByNombre("Darth Vader");
+    }
+}
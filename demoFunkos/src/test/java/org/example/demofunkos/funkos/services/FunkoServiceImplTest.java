@@ -1,15 +1,19 @@
 package org.example.demofunkos.funkos.services;
 
+import org.example.demofunkos.cache.services.JsonSnapshot;
 import org.example.demofunkos.categoria.models.Categoria;
 import org.example.demofunkos.categoria.services.CategoriaService;
 import org.example.demofunkos.funkos.dto.FunkoDto;
+import org.example.demofunkos.funkos.dto.FunkoResumenDto;
 import org.example.demofunkos.funkos.mappers.FunkoMapper;
 import org.example.demofunkos.funkos.models.Funko;
+import org.example.demofunkos.funkos.models.FunkoBorrado;
+import org.example.demofunkos.funkos.repositories.FunkoBorradoRepository;
 import org.example.demofunkos.funkos.repositories.FunkoRepository;
 import org.example.demofunkos.funkos.validators.FunkoValidator;
-import org.example.demofunkos.notifications.config.WebSocketConfig;
-import org.example.demofunkos.notifications.config.WebSocketHandler;
 import org.example.demofunkos.notifications.mappers.NotificacionMapper;
+import org.example.demofunkos.notifications.models.Notificacion;
+import org.example.demofunkos.notifications.services.OutboxService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -18,13 +22,18 @@ import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -34,6 +43,9 @@ class FunkoServiceImplTest {
     @Mock
     private FunkoRepository repository;
 
+    @Mock
+    private FunkoBorradoRepository borradoRepository;
+
     @Mock
     private FunkoMapper mapper;
 
@@ -41,9 +53,7 @@ class FunkoServiceImplTest {
     private CategoriaService categoriaService;
 
     @Mock
-    private WebSocketConfig webSocketConfig;
-
-    WebSocketHandler webSocketHandler = mock(WebSocketHandler.class);
+    private OutboxService outboxService;
 
     @Mock
     private NotificacionMapper notificacionMapper;
@@ -51,6 +61,12 @@ class FunkoServiceImplTest {
     @Mock
     private FunkoValidator validator;
 
+    @Mock
+    private CacheManager cacheManager;
+
+    @Mock
+    private JsonSnapshot funkosSnapshot;
+
     @InjectMocks
     private FunkoServiceImpl service;
 
@@ -71,8 +87,6 @@ class FunkoServiceImplTest {
         funkoTest.setNombre("Darth Vader");
         funkoTest.setPrecio(10.99);
         funkoTest.setCategoria(categoriaTest);
-
-        service.setWebSocketHandler(webSocketHandler);
     }
 
     @Test
@@ -92,6 +106,199 @@ class FunkoServiceImplTest {
         verify(repository, times(1)).findAll();
     }
 
+    @Test
+    void getPageFirstPage() {
+        var primero = new FunkoResumenDto(1L, "Darth Vader", 10.99, "PELICULA", null, null);
+        var segundo = new FunkoResumenDto(2L, "Yoda", 12.99, "PELICULA", null, null);
+
+        when(repository.findResumenByIdGreaterThan(Long.MIN_VALUE, Limit.of(2))).thenReturn(List.of(primero, segundo));
+
+        var result = service.getPage(null, 1, "asc");
+
+        assertAll(
+                () -> assertEquals(1, result.content().size()),
+                () -> assertEquals(primero, result.content().get(0)),
+                () -> assertTrue(result.hasNext()),
+                () -> assertNotNull(result.nextCursor())
+        );
+
+        verify(repository, times(1)).findResumenByIdGreaterThan(Long.MIN_VALUE, Limit.of(2));
+    }
+
+    @Test
+    void getPageWithCursor() {
+        var primero = new FunkoResumenDto(1L, "Darth Vader", 10.99, "PELICULA", null, null);
+        var segundo = new FunkoResumenDto(2L, "Yoda", 12.99, "PELICULA", null, null);
+
+        when(repository.findResumenByIdGreaterThan(Long.MIN_VALUE, Limit.of(2))).thenReturn(List.of(primero, segundo));
+        when(repository.findResumenByIdGreaterThan(1L, Limit.of(2))).thenReturn(List.of(segundo));
+
+        var cursor = service.getPage(null, 1, "asc").nextCursor();
+        var result = service.getPage(cursor, 1, "asc");
+
+        assertAll(
+                () -> assertEquals(1, result.content().size()),
+                () -> assertEquals(segundo, result.content().get(0)),
+                () -> assertFalse(result.hasNext()),
+                () -> assertNull(result.nextCursor())
+        );
+
+        verify(repository, times(1)).findResumenByIdGreaterThan(1L, Limit.of(2));
+    }
+
+    @Test
+    void getPageDesc() {
+        var primero = new FunkoResumenDto(1L, "Darth Vader", 10.99, "PELICULA", null, null);
+
+        when(repository.findResumenByIdLessThan(Long.MAX_VALUE, Limit.of(11))).thenReturn(List.of(primero));
+
+        var result = service.getPage(null, 10, "desc");
+
+        assertAll(
+                () -> assertEquals(1, result.content().size()),
+                () -> assertEquals("desc", result.sort()),
+                () -> assertFalse(result.hasNext())
+        );
+
+        verify(repository, times(1)).findResumenByIdLessThan(Long.MAX_VALUE, Limit.of(11));
+    }
+
+    @Test
+    void getPageSizeNotValid() {
+        ResponseStatusException thrown = assertThrows(
+                ResponseStatusException.class, () -> service.getPage(null, 0, "asc")
+        );
+
+        assertEquals(HttpStatus.BAD_REQUEST, thrown.getStatusCode());
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void getPageCursorNotValid() {
+        ResponseStatusException thrown = assertThrows(
+                ResponseStatusException.class, () -> service.getPage("cursor#invalido", 10, "asc")
+        );
+
+        assertEquals(HttpStatus.BAD_REQUEST, thrown.getStatusCode());
+        assertEquals("El cursor no es valido", thrown.getReason());
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void getCambiosAdvancesWatermarkToLastRow() {
+        var since = LocalDateTime.now().minusHours(1);
+        var primero = new FunkoResumenDto(4L, "Darth Vader", 10.99, "PELICULA", null, since.plusMinutes(1));
+        var segundo = new FunkoResumenDto(7L, "Yoda", 12.99, "PELICULA", null, since.plusMinutes(1));
+
+        when(repository.findCambios(eq(since), eq(Long.MAX_VALUE), any(LocalDateTime.class), eq(Limit.of(2)))).thenReturn(List.of(primero, segundo));
+        when(borradoRepository.findBorrados(eq(since), eq(Long.MAX_VALUE), any(LocalDateTime.class), eq(Limit.of(2))))
+                .thenReturn(List.of(new FunkoBorrado(3L, since.plusMinutes(2))));
+
+        var result = service.getCambios(since, null, 1);
+
+        assertAll(
+                () -> assertEquals(List.of(primero), result.cambios()),
+                () -> assertTrue(result.borrados().isEmpty()),
+                () -> assertEquals(since.plusMinutes(1), result.since()),
+                () -> assertEquals(4L, result.afterId()),
+                () -> assertTrue(result.hasMore())
+        );
+    }
+
+    @Test
+    void getCambiosMergesChangesAndDeletionsInOrder() {
+        var since = LocalDateTime.now().minusHours(1);
+        var primero = new FunkoResumenDto(4L, "Darth Vader", 10.99, "PELICULA", null, since.plusMinutes(1));
+        var segundo = new FunkoResumenDto(7L, "Yoda", 12.99, "PELICULA", null, since.plusMinutes(3));
+
+        when(repository.findCambios(eq(since), eq(2L), any(LocalDateTime.class), eq(Limit.of(4)))).thenReturn(List.of(primero, segundo));
+        when(borradoRepository.findBorrados(eq(since), eq(2L), any(LocalDateTime.class), eq(Limit.of(4))))
+                .thenReturn(List.of(new FunkoBorrado(3L, since.plusMinutes(2))));
+
+        var result = service.getCambios(since, 2L, 3);
+
+        assertAll(
+                () -> assertEquals(List.of(primero, segundo), result.cambios()),
+                () -> assertEquals(List.of(3L), result.borrados()),
+                () -> assertEquals(since.plusMinutes(3), result.since()),
+                () -> assertEquals(7L, result.afterId()),
+                () -> assertFalse(result.hasMore())
+        );
+    }
+
+    @Test
+    void getCambiosHidesTheCommitLagWindow() {
+        var since = LocalDateTime.now().minusHours(1);
+        var hasta = ArgumentCaptor.forClass(LocalDateTime.class);
+
+        when(repository.findCambios(eq(since), eq(Long.MAX_VALUE), hasta.capture(), eq(Limit.of(11)))).thenReturn(List.of());
+        when(borradoRepository.findBorrados(eq(since), eq(Long.MAX_VALUE), any(LocalDateTime.class), eq(Limit.of(11)))).thenReturn(List.of());
+
+        service.getCambios(since, null, 10);
+
+        assertTrue(hasta.getValue().isBefore(LocalDateTime.now().minusSeconds(4)));
+    }
+
+    @Test
+    void getCambiosWithoutChangesKeepsWatermark() {
+        var since = LocalDateTime.now().minusHours(1);
+
+        when(repository.findCambios(eq(since), eq(5L), any(LocalDateTime.class), eq(Limit.of(501)))).thenReturn(List.of());
+        when(borradoRepository.findBorrados(eq(since), eq(5L), any(LocalDateTime.class), eq(Limit.of(501)))).thenReturn(List.of());
+
+        var result = service.getCambios(since, 5L, 500);
+
+        assertAll(
+                () -> assertTrue(result.cambios().isEmpty()),
+                () -> assertEquals(since, result.since()),
+                () -> assertEquals(5L, result.afterId()),
+                () -> assertFalse(result.hasMore())
+        );
+    }
+
+    @Test
+    void getCambiosBeyondRetentionAsksForResync() {
+        ResponseStatusException thrown = assertThrows(
+                ResponseStatusException.class, () -> service.getCambios(LocalDateTime.now().minusDays(8), null, 10)
+        );
+
+        assertEquals(HttpStatus.GONE, thrown.getStatusCode());
+        verifyNoInteractions(repository, borradoRepository);
+    }
+
+    @Test
+    void getCambiosSizeNotValid() {
+        ResponseStatusException thrown = assertThrows(
+                ResponseStatusException.class, () -> service.getCambios(LocalDateTime.now(), null, 1001)
+        );
+
+        assertEquals(HttpStatus.BAD_REQUEST, thrown.getStatusCode());
+        verifyNoInteractions(repository, borradoRepository);
+    }
+
+    @Test
+    void exportAll() throws IOException {
+        var fecha = LocalDateTime.of(2024, 1, 1, 10, 0);
+        when(repository.streamAllResumen()).thenReturn(Stream.of(
+                new FunkoResumenDto(1L, "Darth Vader", 10.99, "PELICULA", fecha, fecha),
+                new FunkoResumenDto(2L, "Yoda", 12.99, "PELICULA", fecha, fecha)
+        ));
+        var out = new ByteArrayOutputStream();
+
+        var count = service.exportAll(out);
+        var lines = out.toString().split("\n");
+
+        assertAll(
+                () -> assertEquals(2, count),
+                () -> assertEquals(2, lines.length),
+                () -> assertTrue(lines[0].contains("\"nombre\":\"Darth Vader\"")),
+                () -> assertTrue(lines[1].contains("\"categoria\":\"PELICULA\"")),
+                () -> assertTrue(lines[1].contains("\"createdAt\":\"2024-01-01T10:00:00\""))
+        );
+
+        verify(repository, times(1)).streamAllResumen();
+    }
+
     @Test
     void getById() {
         when(validator.isIdValid("1")).thenReturn(true);
@@ -193,7 +400,6 @@ class FunkoServiceImplTest {
         when(validator.isNameUnique(nuevoFunkoDto.getNombre())).thenReturn(true);
         when(mapper.toFunko(nuevoFunkoDto, nuevaCategoria)).thenReturn(nuevoFunko);
         when(repository.save(nuevoFunko)).thenReturn(nuevoFunko);
-        doNothing().when(webSocketHandler).sendMessage(any());
 
         var result = service.save(nuevoFunkoDto);
 
@@ -204,6 +410,8 @@ class FunkoServiceImplTest {
         );
 
         verify(repository, times(1)).save(nuevoFunko);
+        verify(funkosSnapshot, times(1)).invalidate();
+        verify(outboxService, times(1)).registrar(any(Notificacion.class));
         verify(mapper, times(1)).toFunko(nuevoFunkoDto, nuevaCategoria);
         verify(categoriaService, times(1)).getByNombre(nuevaCategoria.getNombre());
     }
@@ -283,7 +491,6 @@ class FunkoServiceImplTest {
         when(validator.isNameUnique(updatedFunkoDto.getNombre())).thenReturn(true);
         when(categoriaService.getByNombre(updatedFunkoDto.getCategoria())).thenReturn(updatedCategoria);
         when(repository.save(updatedFunko)).thenReturn(updatedFunko);
-        doNothing().when(webSocketHandler).sendMessage(any());
 
         var result = service.update("2", updatedFunkoDto);
 
@@ -299,6 +506,8 @@ class FunkoServiceImplTest {
         verify(repository, times(1)).findById(2L);
         verify(validator, times(1)).isNameUnique(updatedFunkoDto.getNombre());
         verify(repository, times(1)).save(updatedFunko);
+        verify(funkosSnapshot, times(1)).invalidate();
+        verify(outboxService, times(1)).registrar(any(Notificacion.class));
         verify(categoriaService, times(1)).getByNombre(updatedCategoria.getNombre());
     }
 
@@ -435,7 +644,6 @@ class FunkoServiceImplTest {
     void delete() throws IOException {
         when(validator.isIdValid("1")).thenReturn(true);
         when(repository.findById(1L)).thenReturn(Optional.of(funkoTest));
-        doNothing().when(webSocketHandler).sendMessage(any());
 
         var result = service.delete("1");
 
@@ -448,6 +656,10 @@ class FunkoServiceImplTest {
         verify(validator, times(1)).isIdValid("1");
         verify(repository, times(1)).findById(1L);
         verify(repository, times(1)).deleteById(1L);
+        verify(borradoRepository, times(1)).save(argThat(b -> b.getId().equals(funkoTest.getId()) && b.getDeletedAt() != null));
+        verify(borradoRepository, times(1)).deleteAnterioresA(argThat(limite -> limite.isBefore(LocalDateTime.now().minusDays(6))));
+        verify(funkosSnapshot, times(1)).invalidate();
+        verify(outboxService, times(1)).registrar(any(Notificacion.class));
     }
 
     @Test
@@ -0,0 +1,540 @@
+package org.example.demofunkos.notifications.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.example.demofunkos.notifications.dto.NotificacionDto;
+import org.example.demofunkos.notifications.models.Notificacion;
+import org.example.demofunkos.notifications.services.NotificacionLog;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.*;
+
+class WebSocketHandlerTest {
+
+    private final List<WebSocketSession> suscritas = new ArrayList<>();
+
+    private static WebSocketHandler handler(int queueCapacity) {
+        return new WebSocketHandler("Funkos", queueCapacity, SessionSender.OverflowPolicy.CLOSE, new NotificacionLog(1000));
+    }
+
+    private WebSocketSession session(String id, List<String> received, CountDownLatch release) throws Exception {
+        var session = mock(WebSocketSession.class);
+        lenient().when(session.getId()).thenReturn(id);
+        lenient().when(session.isOpen()).thenReturn(true);
+        lenient().doAnswer(invocation -> {
+            release.await();
+            WebSocketMessage<?> message = invocation.getArgument(0);
+            received.add((String) message.getPayload());
+            return null;
+        }).when(session).sendMessage(any());
+        return session;
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void slowSessionDoesNotBlockBroadcast() throws Exception {
+        var handler = handler(4);
+        var fastReceived = new CopyOnWriteArrayList<String>();
+        var fastDone = new CountDownLatch(3);
+        var fast = session("fast", fastReceived, new CountDownLatch(0));
+        doAnswer(invocation -> {
+            fastReceived.add((String) ((WebSocketMessage<?>) invocation.getArgument(0)).getPayload());
+            fastDone.countDown();
+            return null;
+        }).when(fast).sendMessage(any());
+        var slow = session("slow", new CopyOnWriteArrayList<>(), new CountDownLatch(1));
+
+        handler.afterConnectionEstablished(fast);
+        handler.afterConnectionEstablished(slow);
+        handler.broadcast(notificacion(Notificacion.Tipo.UPDATE, "PELICULA", 1.0), "uno".getBytes(StandardCharsets.UTF_8));
+        handler.broadcast(notificacion(Notificacion.Tipo.UPDATE, "PELICULA", 2.0), "dos".getBytes(StandardCharsets.UTF_8));
+
+        await(fastDone);
+        assertEquals(List.of("Se ha conectado Funkos", "uno", "dos"), fastReceived);
+    }
+
+    @Test
+    void closePolicyDisconnectsSessionWhenQueueIsFull() throws Exception {
+        var release = new CountDownLatch(1);
+        var received = new CopyOnWriteArrayList<String>();
+        var slow = session("slow", received, release);
+        var cerradaPor = new CompletableFuture<String>();
+        doAnswer(invocation -> {
+            cerradaPor.complete(Thread.currentThread().getName() + " tras " + received.size());
+            return null;
+        }).when(slow).close(any());
+        var sender = SessionSender.start(slow, 2, SessionSender.OverflowPolicy.CLOSE);
+
+        sender.send(new TextMessage("m0"));
+        // el escritor queda bloqueado enviando m0, la cola admite dos mensajes mas
+        Thread.sleep(100);
+        for (int i = 1; i <= 3; i++) {
+            sender.send(new TextMessage("m" + i));
+        }
+        boolean accepted = sender.send(new TextMessage("desborde"));
+        assertTrue(sender.isClosed());
+        // El escritor sigue enviando m0: la sesion no se cierra desde este hilo ni a mitad del envio
+        assertFalse(cerradaPor.isDone());
+        release.countDown();
+
+        assertAll(
+                () -> assertFalse(accepted),
+                () -> assertEquals("ws-sender-slow tras 1", cerradaPor.get(5, TimeUnit.SECONDS)),
+                () -> verify(slow).close(CloseStatus.SESSION_NOT_RELIABLE)
+        );
+    }
+
+    @Test
+    void dropOldestPolicyKeepsMostRecentMessages() throws Exception {
+        var release = new CountDownLatch(1);
+        var received = new CopyOnWriteArrayList<String>();
+        var slow = session("slow", received, release);
+        var sender = SessionSender.start(slow, 2, SessionSender.OverflowPolicy.DROP_OLDEST);
+
+        sender.send(new TextMessage("m0"));
+        // el escritor queda bloqueado enviando m0, la cola admite dos mensajes mas
+        Thread.sleep(100);
+        for (int i = 1; i <= 4; i++) {
+            assertTrue(sender.send(new TextMessage("m" + i)));
+        }
+        release.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (received.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        sender.stop();
+
+        assertAll(
+                () -> assertEquals(List.of("m0", "m3", "m4"), received),
+                () -> assertEquals(2, sender.getDropped())
+        );
+    }
+
+    @Test
+    void closedSessionIsRemovedAndNotSentTo() throws Exception {
+        var handler = handler(256);
+        var received = new CopyOnWriteArrayList<String>();
+        var session = session("s1", received, new CountDownLatch(0));
+
+        handler.afterConnectionEstablished(session);
+        handler.afterConnectionClosed(session, CloseStatus.NORMAL);
+        handler.broadcast(notificacion(Notificacion.Tipo.UPDATE, "PELICULA", 1.0), "tarde".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(0, handler.getSessionCount());
+        verify(session, never()).sendMessage(new TextMessage("tarde"));
+    }
+
+    @Test
+    void broadcastSharesOneFrameAcrossSessions() throws Exception {
+        var handler = handler(256);
+        var frames = new CopyOnWriteArrayList<WebSocketMessage<?>>();
+        var recibidos = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            var session = mock(WebSocketSession.class);
+            when(session.getId()).thenReturn("s" + i);
+            when(session.isOpen()).thenReturn(true);
+            doAnswer(invocation -> {
+                WebSocketMessage<?> message = invocation.getArgument(0);
+                if (!"Se ha conectado Funkos".equals(message.getPayload())) {
+                    frames.add(message);
+                    recibidos.countDown();
+                }
+                return null;
+            }).when(session).sendMessage(any());
+            handler.afterConnectionEstablished(session);
+        }
+
+        handler.broadcast(notificacion(Notificacion.Tipo.UPDATE, "PELICULA", 10.99), "{\"precio\":10.99}".getBytes(StandardCharsets.UTF_8));
+
+        await(recibidos);
+        assertAll(
+                () -> assertSame(frames.get(0), frames.get(1)),
+                () -> assertSame(frames.get(1), frames.get(2)),
+                () -> assertEquals("{\"precio\":10.99}", frames.get(0).getPayload())
+        );
+    }
+
+    @Test
+    void broadcastAllocationDoesNotGrowWithSessions() throws Exception {
+        var threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        var notificacion = new Notificacion<>("FUNKOS", Notificacion.Tipo.UPDATE,
+                new NotificacionDto(1L, "Darth Vader", "PELICULA", 10.99, null, null), null);
+        byte[] payload = "{\"entity\":\"FUNKOS\",\"type\":\"UPDATE\"}".getBytes(StandardCharsets.UTF_8);
+
+        long pocas = allocatedPerBroadcast(threadBean, 10, notificacion, payload);
+        long muchas = allocatedPerBroadcast(threadBean, 1000, notificacion, payload);
+
+        // Con una trama por sesion serian al menos 1000 TextMessage (~24KB) por broadcast
+        assertTrue(muchas < pocas + 8 * 1024, "10 sesiones: " + pocas + " bytes, 1000 sesiones: " + muchas + " bytes");
+    }
+
+    private long allocatedPerBroadcast(com.sun.management.ThreadMXBean threadBean, int sesiones, Notificacion<?> notificacion, byte[] payload) throws Exception {
+        int broadcasts = 200;
+        var handler = handler(broadcasts * 2 + 1);
+        var bloqueo = new CountDownLatch(1);
+        var abiertas = new ArrayList<WebSocketSession>();
+        for (int i = 0; i < sesiones; i++) {
+            var session = session("s" + i, new ArrayList<>(), bloqueo);
+            handler.afterConnectionEstablished(session);
+            abiertas.add(session);
+        }
+        try {
+            // Calentamiento para que el JIT no cuente en la medida
+            for (int i = 0; i < broadcasts; i++) {
+                handler.broadcast(notificacion, payload);
+            }
+            long tid = Thread.currentThread().threadId();
+            long antes = threadBean.getThreadAllocatedBytes(tid);
+            for (int i = 0; i < broadcasts; i++) {
+                handler.broadcast(notificacion, payload);
+            }
+            return (threadBean.getThreadAllocatedBytes(tid) - antes) / broadcasts;
+        } finally {
+            for (var session : abiertas) {
+                handler.afterConnectionClosed(session, CloseStatus.NORMAL);
+            }
+            bloqueo.countDown();
+        }
+    }
+
+    private WebSocketSession suscrita(String id, String query, List<String> received) throws Exception {
+        var session = session(id, received, new CountDownLatch(0));
+        when(session.getUri()).thenReturn(URI.create("ws://localhost/ws/v1/funkos" + (query == null ? "" : "?" + query)));
+        suscritas.add(session);
+        return session;
+    }
+
+    // Cada sesion contesta en orden a una suscripcion no valida: cuando llega la respuesta ya se ha enviado lo anterior
+    private void fin(WebSocketHandler handler) throws Exception {
+        for (var session : suscritas) {
+            handler.handleMessage(session, new TextMessage("fin"));
+        }
+    }
+
+    private static boolean esFin(String mensaje) {
+        return mensaje.startsWith("Suscripcion no valida") && mensaje.contains("'fin'");
+    }
+
+    private static Notificacion<NotificacionDto> notificacion(Notificacion.Tipo tipo, String categoria, double precio) {
+        return new Notificacion<>("FUNKOS", tipo, new NotificacionDto(1L, "Funko", categoria, precio, null, null), null);
+    }
+
+    @SafeVarargs
+    private static void awaitFin(List<String>... recibidos) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        for (var received : recibidos) {
+            while (received.stream().noneMatch(WebSocketHandlerTest::esFin) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            received.replaceAll(mensaje -> esFin(mensaje) ? "fin" : mensaje);
+            assertTrue(received.contains("fin"));
+        }
+    }
+
+    @Test
+    void broadcastOnlyReachesMatchingSubscriptions() throws Exception {
+        var handler = handler(256);
+        var todas = new CopyOnWriteArrayList<String>();
+        var peliculas = new CopyOnWriteArrayList<String>();
+        var seriesBaratas = new CopyOnWriteArrayList<String>();
+        var soloBorrados = new CopyOnWriteArrayList<String>();
+        handler.afterConnectionEstablished(suscrita("todas", null, todas));
+        handler.afterConnectionEstablished(suscrita("peliculas", "categoria=pelicula", peliculas));
+        handler.afterConnectionEstablished(suscrita("series", "categoria=SERIE,ANIME&precioMax=5", seriesBaratas));
+        handler.afterConnectionEstablished(suscrita("borrados", "tipo=DELETE", soloBorrados));
+
+        handler.broadcast(notificacion(Notificacion.Tipo.UPDATE, "PELICULA", 10.99), "pelicula".getBytes(StandardCharsets.UTF_8));
+        handler.broadcast(notificacion(Notificacion.Tipo.CREATE, "SERIE", 20.0), "serie cara".getBytes(StandardCharsets.UTF_8));
+        handler.broadcast(notificacion(Notificacion.Tipo.DELETE, "ANIME", 4.0), "anime barato".getBytes(StandardCharsets.UTF_8));
+        fin(handler);
+
+        awaitFin(todas, peliculas, seriesBaratas, soloBorrados);
+        assertAll(
+                () -> assertEquals(List.of("Se ha conectado Funkos", "pelicula", "serie cara", "anime barato", "fin"), todas),
+                () -> assertEquals(List.of("Se ha conectado Funkos", "pelicula", "fin"), peliculas),
+                () -> assertEquals(List.of("Se ha conectado Funkos", "anime barato", "fin"), seriesBaratas),
+                () -> assertEquals(List.of("Se ha conectado Funkos", "anime barato", "fin"), soloBorrados)
+        );
+    }
+
+    @Test
+    void updateLeavingFilterReachesPreviousSubscribers() throws Exception {
+        var handler = handler(256);
+        var peliculas = new CopyOnWriteArrayList<String>();
+        var baratas = new CopyOnWriteArrayList<String>();
+        var anime = new CopyOnWriteArrayList<String>();
+        handler.afterConnectionEstablished(suscrita("peliculas", "categoria=PELICULA", peliculas));
+        handler.afterConnectionEstablished(suscrita("baratas", "precioMax=5", baratas));
+        handler.afterConnectionEstablished(suscrita("anime", "categoria=ANIME", anime));
+        var anterior = new NotificacionDto(1L, "Funko", "PELICULA", 4.0, null, null);
+
+        handler.broadcast(new Notificacion<>("FUNKOS", Notificacion.Tipo.UPDATE,
+                new NotificacionDto(1L, "Funko", "SERIE", 20.0, null, null).conAnterior(anterior), null),
+                "sale".getBytes(StandardCharsets.UTF_8));
+        fin(handler);
+
+        awaitFin(peliculas, baratas, anime);
+        assertAll(
+                () -> assertEquals(List.of("Se ha conectado Funkos", "sale", "fin"), peliculas),
+                () -> assertEquals(List.of("Se ha conectado Funkos", "sale", "fin"), baratas),
+                () -> assertEquals(List.of("Se ha conectado Funkos", "fin"), anime)
+        );
+    }
+
+    @Test
+    void subscribeMessageReplacesFilter() throws Exception {
+        var handler = handler(256);
+        var received = new CopyOnWriteArrayList<String>();
+        var session = suscrita("s1", "categoria=PELICULA", received);
+        handler.afterConnectionEstablished(session);
+
+        handler.handleMessage(session, new TextMessage("{\"categorias\":[\"SERIE\"],\"tipos\":[\"UPDATE\"]}"));
+        handler.broadcast(notificacion(Notificacion.Tipo.UPDATE, "PELICULA", 1.0), "pelicula".getBytes(StandardCharsets.UTF_8));
+        handler.broadcast(notificacion(Notificacion.Tipo.UPDATE, "SERIE", 1.0), "serie".getBytes(StandardCharsets.UTF_8));
+        handler.handleMessage(session, new TextMessage("{\"precioMin\":5,\"precioMax\":1}"));
+        fin(handler);
+
+        awaitFin(received);
+        assertAll(
+                () -> assertEquals("serie", received.get(1)),
+                () -> assertTrue(received.get(2).startsWith("Suscripcion no valida")),
+                () -> assertEquals("fin", received.get(3))
+        );
+    }
+
+    @Test
+    void batchFramesAreEncodedOncePerDistinctSubset() throws Exception {
+        var handler = handler(256);
+        var todas = new CopyOnWriteArrayList<String>();
+        var pelicula1 = new CopyOnWriteArrayList<String>();
+        var pelicula2 = new CopyOnWriteArrayList<String>();
+        var anime = new CopyOnWriteArrayList<String>();
+        handler.afterConnectionEstablished(suscrita("todas", null, todas));
+        handler.afterConnectionEstablished(suscrita("p1", "categoria=PELICULA", pelicula1));
+        handler.afterConnectionEstablished(suscrita("p2", "categoria=PELICULA", pelicula2));
+        handler.afterConnectionEstablished(suscrita("anime", "categoria=ANIME", anime));
+        var codificaciones = new AtomicInteger();
+
+        handler.broadcastBatch(List.of(
+                notificacion(Notificacion.Tipo.UPDATE, "PELICULA", 1.0),
+                notificacion(Notificacion.Tipo.UPDATE, "SERIE", 2.0)
+        ), subconjunto -> {
+            codificaciones.incrementAndGet();
+            return subconjunto.stream()
+                    .map(n -> ((NotificacionDto) n.data()).categoria())
+                    .toList().toString().getBytes(StandardCharsets.UTF_8);
+        });
+        fin(handler);
+
+        awaitFin(todas, pelicula1, pelicula2, anime);
+        assertAll(
+                () -> assertEquals(2, codificaciones.get()),
+                () -> assertEquals("[PELICULA, SERIE]", todas.get(1)),
+                () -> assertEquals("[PELICULA]", pelicula1.get(1)),
+                () -> assertEquals("[PELICULA]", pelicula2.get(1)),
+                () -> assertEquals(List.of("Se ha conectado Funkos", "fin"), anime)
+        );
+    }
+
+    @Test
+    void invalidSubscriptionQueryClosesSession() throws Exception {
+        var handler = handler(256);
+        var session = suscrita("s1", "tipo=NINGUNO", new ArrayList<>());
+
+        handler.afterConnectionEstablished(session);
+
+        assertEquals(0, handler.getSessionCount());
+        verify(session).close(argThat(status -> status.getCode() == CloseStatus.BAD_DATA.getCode()));
+    }
+
+    @Test
+    void resumeReplaysMissedMatchingEventsBeforeLiveOnes() throws Exception {
+        var notificacionLog = new NotificacionLog(10, "e1");
+        var handler = new WebSocketHandler("Funkos", 16, SessionSender.OverflowPolicy.CLOSE, notificacionLog);
+        for (var categoria : List.of("PELICULA", "SERIE", "PELICULA")) {
+            notificacionLog.publicar(List.of(notificacion(Notificacion.Tipo.UPDATE, categoria, 1.0)), n -> {});
+        }
+        var received = new CopyOnWriteArrayList<String>();
+
+        handler.afterConnectionEstablished(suscrita("s1", "categoria=PELICULA&desde=e1:1", received));
+        notificacionLog.publicar(List.of(notificacion(Notificacion.Tipo.UPDATE, "PELICULA", 2.0)),
+                n -> handler.broadcast(n.get(0), "directo".getBytes(StandardCharsets.UTF_8)));
+        fin(handler);
+
+        awaitFin(received);
+        var repetidas = new ObjectMapper().readTree(received.get(1));
+        assertAll(
+                () -> assertEquals(4, received.size()),
+                () -> assertEquals(1, repetidas.size()),
+                () -> assertEquals(3, repetidas.get(0).get("seq").asLong()),
+                () -> assertEquals("e1", repetidas.get(0).get("epoch").asText()),
+                () -> assertEquals("directo", received.get(2))
+        );
+    }
+
+    @Test
+    void resumeAfterEvictedGapAsksForResync() throws Exception {
+        var notificacionLog = new NotificacionLog(2, "e1");
+        var handler = new WebSocketHandler("Funkos", 16, SessionSender.OverflowPolicy.CLOSE, notificacionLog);
+        for (int i = 0; i < 5; i++) {
+            notificacionLog.publicar(List.of(notificacion(Notificacion.Tipo.UPDATE, "PELICULA", i)), n -> {});
+        }
+        var received = new CopyOnWriteArrayList<String>();
+
+        handler.afterConnectionEstablished(suscrita("s1", "desde=e1:1", received));
+        fin(handler);
+
+        awaitFin(received);
+        assertEquals("{\"type\":\"RESYNC\",\"epoch\":\"e1\",\"seq\":5}", received.get(1));
+    }
+
+    @Test
+    void resumeFromAnotherEpochAsksForResync() throws Exception {
+        // Tras un reinicio la secuencia vuelve a empezar: seq 1 esta en el buffer pero es de otra ejecucion
+        var notificacionLog = new NotificacionLog(10, "e2");
+        var handler = new WebSocketHandler("Funkos", 16, SessionSender.OverflowPolicy.CLOSE, notificacionLog);
+        for (int i = 0; i < 3; i++) {
+            notificacionLog.publicar(List.of(notificacion(Notificacion.Tipo.UPDATE, "PELICULA", i)), n -> {});
+        }
+        var otroEpoch = new CopyOnWriteArrayList<String>();
+        var sinEpoch = new CopyOnWriteArrayList<String>();
+
+        handler.afterConnectionEstablished(suscrita("s1", "desde=e1:1", otroEpoch));
+        handler.afterConnectionEstablished(suscrita("s2", "desde=1", sinEpoch));
+        fin(handler);
+
+        awaitFin(otroEpoch, sinEpoch);
+        assertAll(
+                () -> assertEquals("{\"type\":\"RESYNC\",\"epoch\":\"e2\",\"seq\":3}", otroEpoch.get(1)),
+                () -> assertEquals("{\"type\":\"RESYNC\",\"epoch\":\"e2\",\"seq\":3}", sinEpoch.get(1))
+        );
+    }
+
+    private WebSocketSession conProtocolo(String id, String protocolo, List<WebSocketMessage<?>> received, CountDownLatch recibido) throws Exception {
+        var session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getAcceptedProtocol()).thenReturn(protocolo);
+        doAnswer(invocation -> {
+            WebSocketMessage<?> message = invocation.getArgument(0);
+            if (!(message instanceof TextMessage text && text.getPayload().startsWith("Se ha conectado"))) {
+                received.add(message);
+                recibido.countDown();
+            }
+            return null;
+        }).when(session).sendMessage(any());
+        return session;
+    }
+
+    private static byte[] bytes(WebSocketMessage<?> message) {
+        if (message instanceof TextMessage text) {
+            return text.asBytes();
+        }
+        var buffer = ((BinaryMessage) message).getPayload().duplicate();
+        var bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static List<Notificacion<?>> lote() {
+        var notificaciones = new ArrayList<Notificacion<?>>();
+        for (long i = 0; i < 50; i++) {
+            notificaciones.add(new Notificacion<>("FUNKOS", Notificacion.Tipo.UPDATE,
+                    new NotificacionDto(i, "Funko " + i, "PELICULA", 10.5, "2024-01-01T00:00:00", "2024-01-01T00:00:00"),
+                    "2024-01-01T00:00:00", i + 1, "e1"));
+        }
+        return notificaciones;
+    }
+
+    @Test
+    void cborSubprotocolReceivesPlainCborFrames() throws Exception {
+        var handler = handler(256);
+        var json = new CopyOnWriteArrayList<WebSocketMessage<?>>();
+        var cbor = new CopyOnWriteArrayList<WebSocketMessage<?>>();
+        var recibidos = new CountDownLatch(2);
+        handler.afterConnectionEstablished(conProtocolo("json", WebSocketHandler.PROTOCOLO_JSON, json, recibidos));
+        handler.afterConnectionEstablished(conProtocolo("cbor", WebSocketHandler.PROTOCOLO_CBOR, cbor, recibidos));
+        var mapper = new ObjectMapper();
+
+        handler.broadcastBatch(lote(), mapper::writeValueAsBytes);
+
+        await(recibidos);
+        var cborBytes = bytes(cbor.get(0));
+        // Sin la extension stringref el valor de una cadena repetida aparece completo cada vez
+        var repeticiones = new String(cborBytes, StandardCharsets.ISO_8859_1).split("PELICULA", -1).length - 1;
+        assertAll(
+                () -> assertEquals(List.of(WebSocketHandler.PROTOCOLO_CBOR_STRINGREF, WebSocketHandler.PROTOCOLO_CBOR,
+                        WebSocketHandler.PROTOCOLO_JSON), handler.getSubProtocols()),
+                () -> assertInstanceOf(TextMessage.class, json.get(0)),
+                () -> assertInstanceOf(BinaryMessage.class, cbor.get(0)),
+                () -> assertEquals(mapper.readTree(bytes(json.get(0))), new CBORMapper().readTree(cborBytes)),
+                () -> assertEquals(50, repeticiones)
+        );
+    }
+
+    @Test
+    void cborStringrefSubprotocolReceivesCompactFrames() throws Exception {
+        var handler = handler(256);
+        var json = new CopyOnWriteArrayList<WebSocketMessage<?>>();
+        var cbor = new CopyOnWriteArrayList<WebSocketMessage<?>>();
+        var recibidos = new CountDownLatch(2);
+        handler.afterConnectionEstablished(conProtocolo("json", WebSocketHandler.PROTOCOLO_JSON, json, recibidos));
+        handler.afterConnectionEstablished(conProtocolo("cbor", WebSocketHandler.PROTOCOLO_CBOR_STRINGREF, cbor, recibidos));
+        var mapper = new ObjectMapper();
+
+        handler.broadcastBatch(lote(), mapper::writeValueAsBytes);
+
+        await(recibidos);
+        var cborBytes = bytes(cbor.get(0));
+        assertAll(
+                () -> assertEquals(mapper.readTree(bytes(json.get(0))), new CBORMapper().readTree(cborBytes)),
+                () -> assertTrue(cborBytes.length * 2 < bytes(json.get(0)).length,
+                        "CBOR: " + cborBytes.length + " bytes, JSON: " + bytes(json.get(0)).length + " bytes")
+        );
+    }
+
+    @Test
+    void cborFramesShareBytesButNotBuffers() throws Exception {
+        var handler = handler(256);
+        var received = new CopyOnWriteArrayList<WebSocketMessage<?>>();
+        var recibidos = new CountDownLatch(2);
+        handler.afterConnectionEstablished(conProtocolo("c1", WebSocketHandler.PROTOCOLO_CBOR, received, recibidos));
+        handler.afterConnectionEstablished(conProtocolo("c2", WebSocketHandler.PROTOCOLO_CBOR, received, recibidos));
+
+        handler.broadcast(notificacion(Notificacion.Tipo.UPDATE, "PELICULA", 1.0), "{}".getBytes(StandardCharsets.UTF_8));
+
+        await(recibidos);
+        var primero = ((BinaryMessage) received.get(0)).getPayload();
+        var segundo = ((BinaryMessage) received.get(1)).getPayload();
+        assertAll(
+                () -> assertNotSame(primero, segundo),
+                () -> assertSame(primero.array(), segundo.array())
+        );
+    }
+}
@@ -0,0 +1,89 @@
+package org.example.demofunkos.notifications.services;
+
+import org.example.demofunkos.notifications.dto.NotificacionDto;
+import org.example.demofunkos.notifications.models.Notificacion;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NotificacionBatchTest {
+
+    private static Notificacion<NotificacionDto> notificacion(Notificacion.Tipo tipo, long id, double precio) {
+        var dto = new NotificacionDto(id, "Funko " + id, "PELICULA", precio, null, null);
+        return new Notificacion<>("FUNKOS", tipo, dto, "2024-01-01T00:00:00");
+    }
+
+    @Test
+    void keepsOnlyLatestUpdatePerFunko() {
+        var batch = new NotificacionBatch();
+
+        batch.add(notificacion(Notificacion.Tipo.UPDATE, 1, 10.0));
+        batch.add(notificacion(Notificacion.Tipo.UPDATE, 2, 20.0));
+        batch.add(notificacion(Notificacion.Tipo.UPDATE, 1, 11.0));
+
+        var result = batch.getNotificaciones();
+        assertAll(
+                () -> assertEquals(2, result.size()),
+                () -> assertEquals(20.0, ((NotificacionDto) result.get(0).data()).precio()),
+                () -> assertEquals(11.0, ((NotificacionDto) result.get(1).data()).precio()),
+                () -> assertEquals(3, batch.getRecibidas()),
+                () -> assertEquals(1, batch.getCoalescidas())
+        );
+    }
+
+    @Test
+    void coalescedUpdatesKeepTheFirstPreviousState() {
+        var batch = new NotificacionBatch();
+        var original = new NotificacionDto(1L, "Funko 1", "PELICULA", 10.0, null, null);
+        var serie = new NotificacionDto(1L, "Funko 1", "SERIE", 10.0, null, null);
+        var anime = new NotificacionDto(1L, "Funko 1", "ANIME", 12.0, null, null);
+
+        batch.add(new Notificacion<>("FUNKOS", Notificacion.Tipo.UPDATE, serie.conAnterior(original), null));
+        batch.add(new Notificacion<>("FUNKOS", Notificacion.Tipo.UPDATE, anime.conAnterior(serie), null));
+
+        var dto = (NotificacionDto) batch.getNotificaciones().get(0).data();
+        assertAll(
+                () -> assertEquals("ANIME", dto.categoria()),
+                () -> assertEquals("PELICULA", dto.categoriaAnterior()),
+                () -> assertEquals(10.0, dto.precioAnterior())
+        );
+    }
+
+    @Test
+    void createFollowedByUpdateStaysCreate() {
+        var batch = new NotificacionBatch();
+
+        batch.add(notificacion(Notificacion.Tipo.CREATE, 1, 10.0));
+        batch.add(notificacion(Notificacion.Tipo.UPDATE, 1, 12.0));
+
+        var result = batch.getNotificaciones();
+        assertAll(
+                () -> assertEquals(1, result.size()),
+                () -> assertEquals(Notificacion.Tipo.CREATE, result.get(0).type()),
+                () -> assertEquals(12.0, ((NotificacionDto) result.get(0).data()).precio())
+        );
+    }
+
+    @Test
+    void createFollowedByDeleteIsDropped() {
+        var batch = new NotificacionBatch();
+
+        batch.add(notificacion(Notificacion.Tipo.CREATE, 1, 10.0));
+        batch.add(notificacion(Notificacion.Tipo.DELETE, 1, 10.0));
+
+        assertAll(
+                () -> assertTrue(batch.isEmpty()),
+                () -> assertEquals(2, batch.getCoalescidas())
+        );
+    }
+
+    @Test
+    void notificationsWithoutIdAreNotCoalesced() {
+        var batch = new NotificacionBatch();
+
+        batch.add(new Notificacion<>("FUNKOS", Notificacion.Tipo.UPDATE, "a", null));
+        batch.add(new Notificacion<>("FUNKOS", Notificacion.Tipo.UPDATE, "a", null));
+
+        assertEquals(2, batch.getNotificaciones().size());
+    }
+}
@@ -0,0 +1,204 @@
+package org.example.demofunkos.notifications.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.demofunkos.notifications.config.WebSocketSender;
+import org.example.demofunkos.notifications.dto.NotificacionDto;
+import org.example.demofunkos.notifications.models.Notificacion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NotificacionDispatcherImplTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<String> enviados = new CopyOnWriteArrayList<>();
+    private final CountDownLatch bloqueo = new CountDownLatch(1);
+    private NotificacionDispatcherImpl dispatcher;
+
+    @FunctionalInterface
+    private interface Envio {
+        void enviar(String trama) throws IOException;
+    }
+
+    // Cada trama llega como texto, igual que a un cliente JSON
+    private static WebSocketSender sender(Envio envio) {
+        return new WebSocketSender() {
+            @Override
+            public void broadcast(Notificacion<?> notificacion, byte[] utf8Payload) throws IOException {
+                envio.enviar(new String(utf8Payload, StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void broadcastBatch(List<Notificacion<?>> notificaciones, FrameEncoder encoder) throws IOException {
+                envio.enviar(new String(encoder.encode(notificaciones), StandardCharsets.UTF_8));
+            }
+        };
+    }
+
+    private static Notificacion<String> notificacion(String data) {
+        return new Notificacion<>("FUNKOS", Notificacion.Tipo.CREATE, data, "2024-01-01T00:00:00");
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        bloqueo.countDown();
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void dispatchSendsInOrderAndRecordsMetrics() throws Exception {
+        var enviado = new CountDownLatch(2);
+        dispatcher = new NotificacionDispatcherImpl(sender(message -> {
+            enviados.add(message);
+            enviado.countDown();
+        }), new NotificacionLog(100), new ObjectMapper(), registry, 10, Duration.ofSeconds(1), false, Duration.ZERO, 1);
+
+        var primera = dispatcher.dispatch(notificacion("a"));
+        var segunda = dispatcher.dispatch(notificacion("b"));
+
+        assertTrue(enviado.await(5, TimeUnit.SECONDS));
+        primera.get(5, TimeUnit.SECONDS);
+        segunda.get(5, TimeUnit.SECONDS);
+        dispatcher.shutdown();
+        assertAll(
+                () -> assertEquals(2, enviados.size()),
+                () -> assertTrue(enviados.get(0).contains("\"data\":\"a\"")),
+                () -> assertTrue(enviados.get(1).contains("\"data\":\"b\"")),
+                () -> assertEquals(2, registry.get("notificaciones.dispatch").timer().count())
+        );
+    }
+
+    @Test
+    void dispatchBatchSendsEachNotificationWhenBatchModeIsOff() throws Exception {
+        var enviado = new CountDownLatch(3);
+        dispatcher = new NotificacionDispatcherImpl(sender(message -> {
+            enviados.add(message);
+            enviado.countDown();
+        }), new NotificacionLog(100), new ObjectMapper(), registry, 10, Duration.ofSeconds(1), false, Duration.ZERO, 1);
+
+        dispatcher.dispatchBatch(List.of(notificacion("a"), notificacion("b"), notificacion("c"))).get(5, TimeUnit.SECONDS);
+
+        assertTrue(enviado.await(5, TimeUnit.SECONDS));
+        assertAll(
+                () -> assertEquals(3, enviados.size()),
+                () -> assertTrue(enviados.get(0).contains("\"data\":\"a\"")),
+                () -> assertTrue(enviados.get(2).contains("\"data\":\"c\"")),
+                () -> assertEquals(1, registry.get("notificaciones.dispatch").timer().count())
+        );
+    }
+
+    @Test
+    void dispatchBatchSendsOneArrayFrameInBatchMode() throws Exception {
+        var enviado = new CountDownLatch(1);
+        dispatcher = new NotificacionDispatcherImpl(sender(message -> {
+            enviados.add(message);
+            enviado.countDown();
+        }), new NotificacionLog(100), new ObjectMapper(), registry, 10, Duration.ofSeconds(1), true, Duration.ZERO, 10);
+
+        dispatcher.dispatchBatch(List.of(notificacion("a"), notificacion("b"))).get(5, TimeUnit.SECONDS);
+
+        assertTrue(enviado.await(5, TimeUnit.SECONDS));
+        assertAll(
+                () -> assertEquals(1, enviados.size()),
+                () -> assertTrue(enviados.get(0).startsWith("[")),
+                () -> assertTrue(enviados.get(0).indexOf("\"data\":\"a\"") < enviados.get(0).indexOf("\"data\":\"b\""))
+        );
+    }
+
+    @Test
+    void dispatchDropsWhenQueueIsFull() throws InterruptedException {
+        var primero = new CountDownLatch(1);
+        dispatcher = new NotificacionDispatcherImpl(sender(message -> {
+            primero.countDown();
+            try {
+                bloqueo.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }), new NotificacionLog(100), new ObjectMapper(), registry, 2, Duration.ofSeconds(1), false, Duration.ZERO, 1);
+
+        dispatcher.dispatch(notificacion("en curso"));
+        assertTrue(primero.await(5, TimeUnit.SECONDS));
+        assertFalse(dispatcher.dispatch(notificacion("1")).isCompletedExceptionally());
+        assertFalse(dispatcher.dispatch(notificacion("2")).isCompletedExceptionally());
+        assertTrue(dispatcher.dispatch(notificacion("3")).isCompletedExceptionally());
+
+        assertAll(
+                () -> assertEquals(2, registry.get("notificaciones.cola").gauge().value()),
+                () -> assertEquals(1, registry.get("notificaciones.descartadas").counter().count())
+        );
+    }
+
+    @Test
+    void batchModeCoalescesUpdatesIntoOneArrayFrame() throws Exception {
+        var enviado = new CountDownLatch(1);
+        dispatcher = new NotificacionDispatcherImpl(sender(message -> {
+            enviados.add(message);
+            enviado.countDown();
+        }), new NotificacionLog(100), new ObjectMapper(), registry, 1000, Duration.ofSeconds(1), true, Duration.ofMillis(200), 500);
+
+        for (int i = 0; i < 100; i++) {
+            var dto = new NotificacionDto((long) (i % 2), "Funko", "PELICULA", (double) i, null, null);
+            dispatcher.dispatch(new Notificacion<>("FUNKOS", Notificacion.Tipo.UPDATE, dto, null));
+        }
+
+        assertTrue(enviado.await(5, TimeUnit.SECONDS));
+        var frame = new ObjectMapper().readTree(enviados.get(0));
+        assertAll(
+                () -> assertEquals(1, enviados.size()),
+                () -> assertTrue(frame.isArray()),
+                () -> assertEquals(2, frame.size()),
+                () -> assertEquals(98.0, frame.get(0).get("data").get("precio").asDouble()),
+                () -> assertEquals(99.0, frame.get(1).get("data").get("precio").asDouble()),
+                () -> assertEquals(98, registry.get("notificaciones.coalescidas").counter().count())
+        );
+    }
+
+    @Test
+    void shutdownDrainsPendingNotifications() throws InterruptedException {
+        dispatcher = new NotificacionDispatcherImpl(sender(message -> {
+            try {
+                bloqueo.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            enviados.add(message);
+        }), new NotificacionLog(100), new ObjectMapper(), registry, 10, Duration.ofSeconds(5), false, Duration.ZERO, 1);
+
+        for (int i = 0; i < 5; i++) {
+            dispatcher.dispatch(notificacion(String.valueOf(i)));
+        }
+        bloqueo.countDown();
+        dispatcher.shutdown();
+
+        assertAll(
+                () -> assertEquals(5, enviados.size()),
+                () -> assertEquals(0, dispatcher.getQueueSize()),
+                () -> assertTrue(dispatcher.dispatch(notificacion("tarde")).isCompletedExceptionally())
+        );
+    }
+
+    @Test
+    void dispatchFailsWhenBroadcastThrows() {
+        dispatcher = new NotificacionDispatcherImpl(sender(message -> {
+            throw new IOException("sin conexion");
+        }), new NotificacionLog(100), new ObjectMapper(), registry, 10, Duration.ofSeconds(1), false, Duration.ZERO, 1);
+
+        var resultado = dispatcher.dispatch(notificacion("a"));
+
+        var error = assertThrows(ExecutionException.class, () -> resultado.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(UncheckedIOException.class, error.getCause());
+    }
+}
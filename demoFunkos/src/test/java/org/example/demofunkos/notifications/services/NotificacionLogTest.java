@@ -0,0 +1,89 @@
+package org.example.demofunkos.notifications.services;
+
+import org.example.demofunkos.notifications.models.Notificacion;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NotificacionLogTest {
+
+    private final NotificacionLog notificacionLog = new NotificacionLog(3, "e1");
+
+    private static Notificacion<?> notificacion(String data) {
+        return new Notificacion<>("FUNKOS", Notificacion.Tipo.UPDATE, data, null);
+    }
+
+    private void publicar(String... datos) {
+        for (String data : datos) {
+            notificacionLog.publicar(List.of(notificacion(data)), n -> {});
+        }
+    }
+
+    private static List<Object> datos(Optional<List<Notificacion<?>>> pendientes) {
+        return pendientes.orElseThrow().stream().<Object>map(Notificacion::data).toList();
+    }
+
+    @Test
+    void publicarAssignsMonotonicSequences() {
+        var difundidas = new ArrayList<Notificacion<?>>();
+
+        notificacionLog.publicar(List.of(notificacion("a"), notificacion("b")), difundidas::addAll);
+        notificacionLog.publicar(List.of(notificacion("c")), difundidas::addAll);
+
+        assertAll(
+                () -> assertEquals(List.of(1L, 2L, 3L), difundidas.stream().map(Notificacion::seq).toList()),
+                () -> assertEquals(3, notificacionLog.getUltimaSeq())
+        );
+    }
+
+    @Test
+    void reanudarReturnsEventsAfterSequence() {
+        publicar("a", "b", "c");
+
+        assertAll(
+                () -> assertEquals(List.of("b", "c"), datos(notificacionLog.reanudar("e1", 1, Function.identity()))),
+                () -> assertEquals(List.of("a", "b", "c"), datos(notificacionLog.reanudar("e1", 0, Function.identity()))),
+                () -> assertEquals(List.of(), datos(notificacionLog.reanudar("e1", 3, Function.identity())))
+        );
+    }
+
+    @Test
+    void reanudarAsksForResyncWhenGapWasEvicted() {
+        publicar("a", "b", "c", "d", "e");
+
+        assertAll(
+                () -> assertEquals(List.of("c", "d", "e"), datos(notificacionLog.reanudar("e1", 2, Function.identity()))),
+                () -> assertTrue(notificacionLog.reanudar("e1", 1, Function.identity()).isEmpty()),
+                () -> assertTrue(notificacionLog.reanudar("e1", 6, Function.identity()).isEmpty())
+        );
+    }
+
+    @Test
+    void publicarDeshaceLaNumeracionSiLaDifusionFalla() {
+        publicar("a", "b", "c");
+
+        assertThrows(IllegalStateException.class, () -> notificacionLog.publicar(List.of(notificacion("d")), n -> {
+            throw new IllegalStateException("caido");
+        }));
+
+        assertAll(
+                () -> assertEquals(3, notificacionLog.getUltimaSeq()),
+                () -> assertEquals(List.of("a", "b", "c"), datos(notificacionLog.reanudar("e1", 0, Function.identity())))
+        );
+    }
+
+    @Test
+    void reanudarAsksForResyncFromAnotherEpoch() {
+        publicar("a", "b", "c");
+
+        assertAll(
+                () -> assertTrue(notificacionLog.reanudar("e0", 1, Function.identity()).isEmpty()),
+                () -> assertTrue(notificacionLog.reanudar(null, 1, Function.identity()).isEmpty())
+        );
+    }
+}
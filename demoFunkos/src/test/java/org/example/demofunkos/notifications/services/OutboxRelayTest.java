@@ -0,0 +1,132 @@
+package org.example.demofunkos.notifications.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.demofunkos.notifications.dto.NotificacionDto;
+import org.example.demofunkos.notifications.models.Notificacion;
+import org.example.demofunkos.notifications.models.OutboxEvento;
+import org.example.demofunkos.notifications.repositories.OutboxRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest
+class OutboxRelayTest {
+
+    @Autowired
+    private OutboxRepository repository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private final NotificacionDispatcher dispatcher = mock(NotificacionDispatcher.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private OutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        relay = new OutboxRelay(repository, dispatcher, new ObjectMapper(), registry, 2, Duration.ofSeconds(1));
+        for (long id = 1; id <= 3; id++) {
+            var payload = "{\"id\":" + id + ",\"nombre\":\"Funko " + id + "\",\"categoria\":\"PELICULA\",\"precio\":10.0}";
+            repository.save(new OutboxEvento(null, "FUNKOS", Notificacion.Tipo.UPDATE, payload, LocalDateTime.now()));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<Long>> lotesEnviados(int veces) {
+        ArgumentCaptor<List<Notificacion<?>>> lotes = ArgumentCaptor.forClass((Class<List<Notificacion<?>>>) (Class<?>) List.class);
+        verify(dispatcher, times(veces)).dispatchBatch(lotes.capture());
+        return lotes.getAllValues().stream()
+                .map(lote -> lote.stream().map(n -> ((NotificacionDto) n.data()).id()).toList())
+                .toList();
+    }
+
+    @Test
+    void publicaEnOrdenPorLotesYBorraLosEnviados() {
+        when(dispatcher.dispatchBatch(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        relay.publicarPendientes();
+        relay.publicarPendientes();
+
+        assertAll(
+                () -> assertEquals(List.of(List.of(1L, 2L), List.of(3L)), lotesEnviados(2)),
+                () -> assertEquals(0, repository.count()),
+                () -> assertEquals(3, registry.get("notificaciones.outbox.latencia").timer().count())
+        );
+        verify(dispatcher, never()).dispatch(any());
+    }
+
+    @Test
+    void reintentaElLoteRechazadoAntesQueLosPosteriores() {
+        when(dispatcher.dispatchBatch(any()))
+                .thenReturn(CompletableFuture.failedFuture(new RejectedExecutionException("llena")))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        relay.publicarPendientes();
+        assertEquals(3, repository.count());
+        relay.publicarPendientes();
+
+        assertAll(
+                () -> assertEquals(List.of(List.of(1L, 2L), List.of(1L, 2L), List.of(3L)), lotesEnviados(3)),
+                () -> assertEquals(0, repository.count()),
+                () -> assertEquals(2, registry.get("notificaciones.outbox.reintentos").counter().count())
+        );
+    }
+
+    @Test
+    void publicaLosIdsBajosQueSeConfirmanTarde() {
+        when(dispatcher.dispatchBatch(any())).thenReturn(CompletableFuture.completedFuture(null));
+        // Un id reservado antes que otros pero confirmado despues: se quita y se vuelve a insertar con el mismo id
+        var tardio = repository.findAll().get(1);
+        repository.delete(tardio);
+        repository.flush();
+
+        relay.publicarPendientes();
+        entityManager.getEntityManager()
+                .createNativeQuery("insert into notificaciones_outbox (id, entity, tipo, payload, created_at) values (?, ?, ?, ?, ?)")
+                .setParameter(1, tardio.getId())
+                .setParameter(2, tardio.getEntity())
+                .setParameter(3, tardio.getTipo().name())
+                .setParameter(4, tardio.getPayload())
+                .setParameter(5, tardio.getCreatedAt())
+                .executeUpdate();
+        relay.publicarPendientes();
+        relay.publicarPendientes();
+
+        assertAll(
+                () -> assertEquals(List.of(List.of(1L, 3L), List.of(2L)), lotesEnviados(2)),
+                () -> assertEquals(0, repository.count())
+        );
+    }
+
+    @Test
+    void noLeeMasMientrasHayUnLoteEnVuelo() {
+        var enVuelo = new CompletableFuture<Void>();
+        when(dispatcher.dispatchBatch(any())).thenReturn(enVuelo).thenReturn(CompletableFuture.completedFuture(null));
+
+        relay.publicarPendientes();
+        relay.publicarPendientes();
+        assertEquals(List.of(List.of(1L, 2L)), lotesEnviados(1));
+
+        enVuelo.complete(null);
+        relay.publicarPendientes();
+
+        assertAll(
+                () -> assertEquals(List.of(List.of(1L, 2L), List.of(3L)), lotesEnviados(2)),
+                () -> assertEquals(0, repository.count())
+        );
+    }
+}
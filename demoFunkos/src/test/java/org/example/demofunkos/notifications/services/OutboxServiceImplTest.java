@@ -0,0 +1,74 @@
+package org.example.demofunkos.notifications.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.demofunkos.notifications.dto.NotificacionDto;
+import org.example.demofunkos.notifications.models.Notificacion;
+import org.example.demofunkos.notifications.repositories.OutboxRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OutboxServiceImplTest {
+
+    @Autowired
+    private OutboxRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final OutboxRelay relay = mock(OutboxRelay.class);
+    private OutboxServiceImpl service;
+    private TransactionTemplate transaction;
+
+    private final Notificacion<NotificacionDto> notificacion = new Notificacion<>("FUNKOS", Notificacion.Tipo.CREATE,
+            new NotificacionDto(1L, "Darth Vader", "PELICULA", 10.99, null, null), null);
+
+    @BeforeEach
+    void setUp() {
+        service = new OutboxServiceImpl(repository, relay, new ObjectMapper());
+        transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void registrarSeDescartaSiLaTransaccionHaceRollback() {
+        transaction.executeWithoutResult(status -> {
+            service.registrar(notificacion);
+            status.setRollbackOnly();
+        });
+
+        assertEquals(0, repository.count());
+        verify(relay, never()).despertar();
+    }
+
+    @Test
+    void registrarDespiertaAlRelayTrasElCommit() {
+        transaction.executeWithoutResult(status -> {
+            service.registrar(notificacion);
+            verify(relay, never()).despertar();
+        });
+
+        var eventos = repository.findAll();
+        assertAll(
+                () -> assertEquals(1, eventos.size()),
+                () -> assertEquals(Notificacion.Tipo.CREATE, eventos.get(0).getTipo()),
+                () -> assertTrue(eventos.get(0).getPayload().contains("\"nombre\":\"Darth Vader\""))
+        );
+        verify(relay).despertar();
+    }
+}
@@ -1,13 +1,17 @@
 package org.example.demofunkos.storage.controllers;
 
 import jakarta.servlet.http.HttpServletRequest;
+import org.example.demofunkos.storage.dto.FicheroMetadatos;
 import org.example.demofunkos.storage.exceptions.StorageBadRequest;
 import org.example.demofunkos.storage.exceptions.StorageException;
 import org.example.demofunkos.storage.exceptions.StorageNotFound;
+import org.example.demofunkos.storage.exceptions.StoragePayloadTooLarge;
+import org.example.demofunkos.storage.models.Fichero;
 import org.example.demofunkos.storage.services.StorageService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,20 +19,26 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletResponse;
-import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 
 @SpringBootTest
 @AutoConfigureMockMvc
@@ -40,14 +50,13 @@ public class StorageControllerTest {
     private StorageService storageService;
 
     @Test
-    public void testServeFile() throws Exception {
-        MockMultipartFile mockFile = new MockMultipartFile(
-                "file", "test.txt", MediaType.TEXT_PLAIN_VALUE, "Contenido del archivo".getBytes());
-
-        when(storageService.loadAsResource(any())).thenReturn(mockFile.getResource());
+    public void testServeFile(@TempDir Path dir) throws Exception {
+        Path path = Files.writeString(dir.resolve("test.txt"), "Contenido del archivo");
+        when(storageService.loadMetadata("test.txt", null)).thenReturn(
+                new FicheroMetadatos(path, 21, 1_700_000_000_000L, "\"test\"", MediaType.TEXT_PLAIN));
 
         MockHttpServletResponse response = mockMvc.perform(
-                        get("/files/" + mockFile.getName()))
+                        get("/files/test.txt"))
                 .andReturn().getResponse();
 
         assertAll(
@@ -55,4 +64,260 @@ public class StorageControllerTest {
                 () -> assertEquals("Contenido del archivo", response.getContentAsString())
         );
     }
-}
\ No newline at end of file
+
+    private FicheroMetadatos fichero(Path dir) throws IOException {
+        Path path = Files.writeString(dir.resolve("vader.png"), "0123456789");
+        return new FicheroMetadatos(path, 10, 1_700_000_000_000L, "\"a-18bcfe56800\"", MediaType.IMAGE_PNG);
+    }
+
+    @Test
+    public void testServeFileSetsCachingHeaders(@TempDir Path dir) throws Exception {
+        when(storageService.loadMetadata("vader.png", null)).thenReturn(fichero(dir));
+
+        MockHttpServletResponse response = mockMvc.perform(get("/files/vader.png"))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(HttpStatus.OK.value(), response.getStatus()),
+                () -> assertEquals("0123456789", response.getContentAsString()),
+                () -> assertEquals(MediaType.IMAGE_PNG_VALUE, response.getContentType()),
+                () -> assertEquals(10, response.getContentLength()),
+                () -> assertEquals("\"a-18bcfe56800\"", response.getHeader(HttpHeaders.ETAG)),
+                () -> assertNotNull(response.getHeader(HttpHeaders.LAST_MODIFIED)),
+                () -> assertEquals("max-age=604800, public", response.getHeader(HttpHeaders.CACHE_CONTROL)),
+                () -> assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES))
+        );
+    }
+
+    @Test
+    public void testServeFileRange(@TempDir Path dir) throws Exception {
+        when(storageService.loadMetadata("vader.png", null)).thenReturn(fichero(dir));
+
+        MockHttpServletResponse response = mockMvc.perform(get("/files/vader.png")
+                        .header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(HttpStatus.PARTIAL_CONTENT.value(), response.getStatus()),
+                () -> assertEquals("2345", response.getContentAsString()),
+                () -> assertEquals(4, response.getContentLength()),
+                () -> assertEquals("bytes 2-5/10", response.getHeader(HttpHeaders.CONTENT_RANGE))
+        );
+    }
+
+    @Test
+    public void testServeFileSuffixRange(@TempDir Path dir) throws Exception {
+        when(storageService.loadMetadata("vader.png", null)).thenReturn(fichero(dir));
+
+        MockHttpServletResponse response = mockMvc.perform(get("/files/vader.png")
+                        .header(HttpHeaders.RANGE, "bytes=-3"))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(HttpStatus.PARTIAL_CONTENT.value(), response.getStatus()),
+                () -> assertEquals("789", response.getContentAsString()),
+                () -> assertEquals("bytes 7-9/10", response.getHeader(HttpHeaders.CONTENT_RANGE))
+        );
+    }
+
+    @Test
+    public void testServeFileRangeNotSatisfiable(@TempDir Path dir) throws Exception {
+        when(storageService.loadMetadata("vader.png", null)).thenReturn(fichero(dir));
+
+        MockHttpServletResponse response = mockMvc.perform(get("/files/vader.png")
+                        .header(HttpHeaders.RANGE, "bytes=20-30"))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value(), response.getStatus()),
+                () -> assertEquals("bytes */10", response.getHeader(HttpHeaders.CONTENT_RANGE))
+        );
+    }
+
+    @Test
+    public void testServeFileIfRangeMismatchServesWholeFile(@TempDir Path dir) throws Exception {
+        when(storageService.loadMetadata("vader.png", null)).thenReturn(fichero(dir));
+
+        MockHttpServletResponse response = mockMvc.perform(get("/files/vader.png")
+                        .header(HttpHeaders.RANGE, "bytes=2-5")
+                        .header(HttpHeaders.IF_RANGE, "\"otro\""))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(HttpStatus.OK.value(), response.getStatus()),
+                () -> assertEquals("0123456789", response.getContentAsString())
+        );
+    }
+
+    @Test
+    public void testServeFileNotModified(@TempDir Path dir) throws Exception {
+        when(storageService.loadMetadata("vader.png", null)).thenReturn(fichero(dir));
+
+        MockHttpServletResponse response = mockMvc.perform(get("/files/vader.png")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"a-18bcfe56800\""))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getStatus()),
+                () -> assertEquals("", response.getContentAsString())
+        );
+    }
+
+    @Test
+    public void testServeFileUsesSendfileWhenAvailable(@TempDir Path dir) throws Exception {
+        Path path = Files.write(dir.resolve("grande.png"), new byte[64 * 1024]);
+        when(storageService.loadMetadata("grande.png", null)).thenReturn(
+                new FicheroMetadatos(path, 64 * 1024, 1_700_000_000_000L, "\"grande\"", MediaType.IMAGE_PNG));
+
+        var result = mockMvc.perform(get("/files/grande.png")
+                        .requestAttr(StorageController.SENDFILE_SUPPORT, Boolean.TRUE))
+                .andReturn();
+
+        assertAll(
+                () -> assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus()),
+                () -> assertEquals(0, result.getResponse().getContentAsByteArray().length),
+                () -> assertEquals(64 * 1024, result.getResponse().getContentLength()),
+                () -> assertEquals(path.toAbsolutePath().toString(), result.getRequest().getAttribute(StorageController.SENDFILE_FILENAME)),
+                () -> assertEquals(0L, result.getRequest().getAttribute(StorageController.SENDFILE_START)),
+                () -> assertEquals(64L * 1024, result.getRequest().getAttribute(StorageController.SENDFILE_END))
+        );
+        verify(storageService, never()).loadContent(any());
+    }
+
+    @Test
+    public void testServeFileVariant(@TempDir Path dir) throws Exception {
+        Path path = Files.writeString(dir.resolve(".vader.png.thumb"), "mini");
+        when(storageService.loadMetadata("vader.png", "thumb")).thenReturn(
+                new FicheroMetadatos(path, 4, 1_700_000_000_000L, "\"mini\"", MediaType.IMAGE_JPEG));
+
+        MockHttpServletResponse response = mockMvc.perform(get("/files/vader.png").param("variant", "thumb"))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(HttpStatus.OK.value(), response.getStatus()),
+                () -> assertEquals("mini", response.getContentAsString()),
+                () -> assertEquals(MediaType.IMAGE_JPEG_VALUE, response.getContentType())
+        );
+    }
+
+    @Test
+    public void testServeFileVariantFallbackIsNotCachedAsTheVariant(@TempDir Path dir) throws Exception {
+        when(storageService.loadMetadata("vader.png", "thumb")).thenReturn(fichero(dir).enLugarDe("thumb"));
+
+        MockHttpServletResponse response = mockMvc.perform(get("/files/vader.png").param("variant", "thumb")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"a-18bcfe56800\""))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(HttpStatus.OK.value(), response.getStatus()),
+                () -> assertEquals("0123456789", response.getContentAsString()),
+                () -> assertEquals("no-cache", response.getHeader(HttpHeaders.CACHE_CONTROL)),
+                () -> assertEquals("W/\"a-18bcfe56800-thumb\"", response.getHeader(HttpHeaders.ETAG))
+        );
+    }
+
+    @Test
+    public void testServeFileRangeFromHotCache(@TempDir Path dir) throws Exception {
+        var fichero = fichero(dir);
+        when(storageService.loadMetadata("vader.png", null)).thenReturn(fichero);
+        when(storageService.loadContent(fichero)).thenReturn(Optional.of(
+                ByteBuffer.wrap("0123456789".getBytes()).asReadOnlyBuffer()));
+        Files.delete(fichero.path());
+
+        MockHttpServletResponse response = mockMvc.perform(get("/files/vader.png")
+                        .header(HttpHeaders.RANGE, "bytes=7-"))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(HttpStatus.PARTIAL_CONTENT.value(), response.getStatus()),
+                () -> assertEquals("789", response.getContentAsString())
+        );
+    }
+
+    @Test
+    public void testUploadStreamsBody() throws Exception {
+        when(storageService.store(eq("vader.png"), any(InputStream.class), eq(50L * 1024 * 1024)))
+                .thenReturn(new Fichero("1_vader.png", "abc", 5L, null));
+        when(storageService.getUrl("1_vader.png")).thenReturn("http://localhost/files/1_vader.png");
+
+        MockHttpServletResponse response = mockMvc.perform(post("/files")
+                        .param("filename", "vader.png")
+                        .contentType(MediaType.IMAGE_PNG)
+                        .content("vader"))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(HttpStatus.CREATED.value(), response.getStatus()),
+                () -> assertEquals("http://localhost/files/1_vader.png", response.getHeader(HttpHeaders.LOCATION)),
+                () -> assertTrue(response.getContentAsString().contains("\"sha256\":\"abc\""))
+        );
+    }
+
+    @Test
+    public void testUploadOverLimitReturnsPayloadTooLarge() throws Exception {
+        when(storageService.store(eq("vader.png"), any(InputStream.class), anyLong()))
+                .thenThrow(new StoragePayloadTooLarge("El fichero supera el tamaño maximo"));
+
+        MockHttpServletResponse response = mockMvc.perform(post("/files")
+                        .param("filename", "vader.png")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content("vader"))
+                .andReturn().getResponse();
+
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE.value(), response.getStatus());
+    }
+
+    @Test
+    public void testChunkedUpload() throws Exception {
+        when(storageService.store(eq("vader.png"), any(Path.class))).thenAnswer(invocation -> {
+            Path part = invocation.getArgument(1);
+            assertEquals("0123456789", Files.readString(part));
+            return new Fichero("1_vader.png", "abc", 10L, null);
+        });
+        when(storageService.getUrl("1_vader.png")).thenReturn("http://localhost/files/1_vader.png");
+
+        MockHttpServletResponse iniciada = mockMvc.perform(post("/files/uploads")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"filename\":\"vader.png\",\"tamano\":10,\"chunkSize\":4}"))
+                .andReturn().getResponse();
+        String id = iniciada.getContentAsString().replaceAll(".*\"id\":\"([^\"]+)\".*", "$1");
+
+        for (String[] parte : new String[][]{{"2", "89"}, {"0", "0123"}, {"1", "4567"}}) {
+            mockMvc.perform(put("/files/uploads/" + id + "/chunks/" + parte[0])
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .content(parte[1]));
+        }
+        MockHttpServletResponse estado = mockMvc.perform(get("/files/uploads/" + id)).andReturn().getResponse();
+        MockHttpServletResponse completada = mockMvc.perform(post("/files/uploads/" + id + "/complete"))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(HttpStatus.CREATED.value(), iniciada.getStatus()),
+                () -> assertTrue(iniciada.getContentAsString().contains("\"chunks\":3")),
+                () -> assertTrue(estado.getContentAsString().contains("\"pendientes\":[]")),
+                () -> assertEquals(HttpStatus.CREATED.value(), completada.getStatus()),
+                () -> assertEquals("http://localhost/files/1_vader.png", completada.getHeader(HttpHeaders.LOCATION))
+        );
+    }
+
+    @Test
+    public void testChunkedUploadValidatesRequest() throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(post("/files/uploads")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"filename\":\"\",\"tamano\":0}"))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(HttpStatus.BAD_REQUEST.value(), response.getStatus()),
+                () -> assertTrue(response.getContentAsString().contains("filename")),
+                () -> assertTrue(response.getContentAsString().contains("tamano"))
+        );
+    }
+
+    @Test
+    public void testChunkedUploadUnknownSession() throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(get("/files/uploads/noexiste")).andReturn().getResponse();
+
+        assertEquals(HttpStatus.NOT_FOUND.value(), response.getStatus());
+    }
+}
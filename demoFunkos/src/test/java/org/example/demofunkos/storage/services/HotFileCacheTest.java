@@ -0,0 +1,144 @@
+package org.example.demofunkos.storage.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.demofunkos.storage.dto.FicheroMetadatos;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotFileCacheTest {
+
+    @TempDir
+    private Path root;
+
+    private SimpleMeterRegistry registry;
+    private HotFileCache cache;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        cache = new HotFileCache(DataSize.ofKilobytes(64), DataSize.ofKilobytes(16), registry);
+    }
+
+    private FicheroMetadatos fichero(String nombre, String contenido, String etag) throws Exception {
+        Path path = Files.writeString(root.resolve(nombre), contenido);
+        return new FicheroMetadatos(path, Files.size(path), 0, etag, MediaType.IMAGE_PNG);
+    }
+
+    private static String texto(ByteBuffer buffer) {
+        return StandardCharsets.UTF_8.decode(buffer).toString();
+    }
+
+    private double gets(String result) {
+        return registry.get("cache.gets").tag("cache", "ficheros.hot").tag("result", result).functionCounter().count();
+    }
+
+    @Test
+    void getServesRepeatedReadsFromMemory() throws Exception {
+        var fichero = fichero("vader.png", "vader", "\"1\"");
+
+        var primero = cache.get(fichero).orElseThrow();
+        Files.delete(fichero.path());
+        var segundo = cache.get(fichero).orElseThrow();
+
+        assertAll(
+                () -> assertEquals("vader", texto(primero)),
+                () -> assertEquals("vader", texto(segundo)),
+                () -> assertTrue(segundo.isDirect()),
+                () -> assertTrue(segundo.isReadOnly()),
+                () -> assertEquals(1, gets("hit")),
+                () -> assertEquals(1, gets("miss"))
+        );
+    }
+
+    @Test
+    void getReturnsIndependentBuffers() throws Exception {
+        var fichero = fichero("vader.png", "vader", "\"1\"");
+
+        texto(cache.get(fichero).orElseThrow());
+
+        assertEquals("vader", texto(cache.get(fichero).orElseThrow()));
+    }
+
+    @Test
+    void getReloadsWhenEtagChanges() throws Exception {
+        var antiguo = fichero("vader.png", "vader", "\"1\"");
+        cache.get(antiguo);
+        var nuevo = fichero("vader.png", "darth vader", "\"2\"");
+
+        assertAll(
+                () -> assertEquals("darth vader", texto(cache.get(nuevo).orElseThrow())),
+                () -> assertEquals("darth vader", texto(cache.get(nuevo).orElseThrow()))
+        );
+    }
+
+    @Test
+    void getSkipsFilesLargerThanMaxEntrySize() throws Exception {
+        var grande = fichero("grande.png", "x".repeat(17 * 1024), "\"1\"");
+
+        assertTrue(cache.get(grande).isEmpty());
+    }
+
+    @Test
+    void getReturnsEmptyWhenFileIsMissing() {
+        var fichero = new FicheroMetadatos(root.resolve("noexiste.png"), 10, 0, "\"1\"", MediaType.IMAGE_PNG);
+
+        assertTrue(cache.get(fichero).isEmpty());
+    }
+
+    @Test
+    void cacheStaysWithinByteBudget() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            cache.get(fichero("imagen" + i + ".png", "x".repeat(10 * 1024), "\"" + i + "\""));
+        }
+
+        assertAll(
+                () -> assertTrue(registry.get("ficheros.hot.bytes").gauge().value() <= 64 * 1024),
+                () -> assertTrue(registry.get("cache.evictions").tag("cache", "ficheros.hot").functionCounter().count() > 0)
+        );
+    }
+
+    @Test
+    void invalidateDropsFileAndItsVariants() throws Exception {
+        var original = fichero("vader.png", "vader", "\"1\"");
+        var variante = fichero(".vader.png.thumb", "mini", "\"2\"");
+        var otro = fichero("yoda.png", "yoda", "\"3\"");
+        cache.get(original);
+        cache.get(variante);
+        cache.get(otro);
+        var originalCambiado = fichero("vader.png", "cambiado", "\"1\"");
+        var varianteCambiada = fichero(".vader.png.thumb", "cambio", "\"2\"");
+        Files.writeString(otro.path(), "otro");
+
+        cache.invalidate(original.path());
+
+        assertAll(
+                () -> assertEquals("cambiado", texto(cache.get(originalCambiado).orElseThrow())),
+                () -> assertEquals("cambio", texto(cache.get(varianteCambiada).orElseThrow())),
+                () -> assertEquals("yoda", texto(cache.get(otro).orElseThrow()))
+        );
+    }
+
+    @Test
+    void storageDeleteInvalidatesCachedContent() throws Exception {
+        var storageService = new StorageServiceImpl(root.toString(), false, null, 0, null, cache);
+        var nombre = storageService.store(new MockMultipartFile("file", "vader.png", "image/png", "vader".getBytes()));
+        var fichero = storageService.loadMetadata(nombre);
+        assertEquals("vader", texto(storageService.loadContent(fichero).orElseThrow()));
+
+        storageService.delete(nombre);
+        Files.writeString(fichero.path(), "nuevo");
+
+        assertEquals("nuevo", texto(storageService.loadContent(fichero).orElseThrow()));
+    }
+}
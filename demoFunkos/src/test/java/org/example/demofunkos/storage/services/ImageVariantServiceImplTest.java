@@ -0,0 +1,151 @@
+package org.example.demofunkos.storage.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.demofunkos.storage.exceptions.StorageException;
+import org.example.demofunkos.storage.models.VarianteImagen;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageVariantServiceImplTest {
+
+    @TempDir
+    private Path root;
+
+    private SimpleMeterRegistry registry;
+    private ImageVariantServiceImpl variantService;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        variantService = new ImageVariantServiceImpl("thumb:160:jpg,medium:640", 2, 10, Duration.ofSeconds(10), registry);
+    }
+
+    private static byte[] png(int ancho, int alto) throws Exception {
+        var out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(ancho, alto, BufferedImage.TYPE_INT_ARGB), "png", out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void parseReadsNameWidthAndOptionalFormat() {
+        assertAll(
+                () -> assertEquals(List.of(new VarianteImagen("thumb", 160, "jpg"), new VarianteImagen("medium", 640, null)),
+                        VarianteImagen.parse("thumb:160:JPG, medium:640")),
+                () -> assertEquals(List.of(), VarianteImagen.parse("")),
+                () -> assertThrows(StorageException.class, () -> VarianteImagen.parse("thumb")),
+                () -> assertThrows(StorageException.class, () -> VarianteImagen.parse("thumb:0")),
+                () -> assertThrows(StorageException.class, () -> VarianteImagen.parse("thumb:160:noexiste"))
+        );
+    }
+
+    @Test
+    void generarWritesScaledVariantsNextToOriginal() throws Exception {
+        Path original = Files.write(root.resolve("vader.png"), png(1000, 500));
+
+        variantService.generar(original);
+        variantService.shutdown();
+
+        var thumb = ImageIO.read(root.resolve(".vader.png.thumb").toFile());
+        var medium = ImageIO.read(root.resolve(".vader.png.medium").toFile());
+        assertAll(
+                () -> assertEquals(160, thumb.getWidth()),
+                () -> assertEquals(80, thumb.getHeight()),
+                () -> assertEquals(640, medium.getWidth()),
+                () -> assertEquals(320, medium.getHeight()),
+                () -> assertTrue(Files.size(root.resolve(".vader.png.thumb")) < Files.size(original) * 4),
+                () -> assertEquals(1, registry.get("ficheros.variantes").timer().count())
+        );
+    }
+
+    @Test
+    void generarSkipsVariantsLargerThanTheImageUnlessFormatChanges() throws Exception {
+        Path original = Files.write(root.resolve("yoda.png"), png(100, 100));
+
+        variantService.generar(original);
+        variantService.shutdown();
+
+        assertAll(
+                () -> assertEquals(100, ImageIO.read(root.resolve(".yoda.png.thumb").toFile()).getWidth()),
+                () -> assertFalse(Files.exists(root.resolve(".yoda.png.medium")))
+        );
+    }
+
+    @Test
+    void generarIgnoresFilesThatAreNotImages() throws Exception {
+        Path original = Files.writeString(root.resolve("texto.png"), "no soy una imagen", StandardCharsets.UTF_8);
+
+        variantService.generar(original);
+        variantService.shutdown();
+
+        try (var files = Files.list(root)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void generarDropsWorkWhenQueueIsFull() throws Exception {
+        var lento = new ImageVariantServiceImpl("thumb:160", 1, 1, Duration.ofSeconds(10), registry);
+        Path original = Files.write(root.resolve("vader.png"), png(1000, 500));
+
+        for (int i = 0; i < 20; i++) {
+            lento.generar(original);
+        }
+        lento.shutdown();
+
+        assertTrue(registry.get("ficheros.variantes.rechazadas").counter().count() > 0);
+    }
+
+    @Test
+    void storeGeneratesVariantsAndMetadataSelectsThem() throws Exception {
+        var storageService = new StorageServiceImpl(root.toString(), false, null, 2, variantService, null);
+        storageService.init();
+        var nombre = storageService.store(new MockMultipartFile("file", "vader.png", "image/png", png(1000, 500)));
+        variantService.shutdown();
+
+        var original = storageService.loadMetadata(nombre, null);
+        var thumb = storageService.loadMetadata(nombre, "thumb");
+        var medium = storageService.loadMetadata(nombre, "medium");
+
+        assertAll(
+                () -> assertEquals("image/jpeg", thumb.mediaType().toString()),
+                () -> assertEquals("image/png", medium.mediaType().toString()),
+                () -> assertEquals(original.path().getParent(), thumb.path().getParent()),
+                () -> assertTrue(thumb.size() < original.size()),
+                () -> assertNotEquals(original.etag(), thumb.etag()),
+                () -> assertEquals(1, storageService.loadAll().count()),
+                () -> assertThrows(StorageException.class, () -> storageService.loadMetadata(nombre, "noexiste"))
+        );
+
+        storageService.delete(nombre);
+        assertFalse(Files.exists(thumb.path()));
+    }
+
+    @Test
+    void metadataFallsBackToOriginalUntilVariantExists() throws Exception {
+        var storageService = new StorageServiceImpl(root.toString(), false, null, 0, variantService, null);
+        Files.write(root.resolve("vader.png"), png(1000, 500));
+
+        var antes = storageService.loadMetadata("vader.png", "thumb");
+        variantService.generar(root.resolve("vader.png"));
+        variantService.shutdown();
+        var despues = storageService.loadMetadata("vader.png", "thumb");
+
+        assertAll(
+                () -> assertEquals(root.resolve("vader.png"), antes.path()),
+                () -> assertEquals(root.resolve(".vader.png.thumb"), despues.path())
+        );
+    }
+}
@@ -0,0 +1,132 @@
+package org.example.demofunkos.storage.services;
+
+import org.example.demofunkos.storage.repositories.FicheroRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class StorageServiceImplContentAddressedTest {
+
+    @Autowired
+    private FicheroRepository ficheroRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @TempDir
+    private Path root;
+
+    private StorageServiceImpl storageService;
+
+    @BeforeEach
+    void setUp() {
+        storageService = new StorageServiceImpl(root.toString(), true, ficheroRepository, 0, null, null);
+        storageService.init();
+    }
+
+    private static MockMultipartFile imagen(String nombre, String contenido) {
+        return new MockMultipartFile("file", nombre, "image/png", contenido.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long blobs() throws Exception {
+        try (var files = Files.list(root.resolve(".blobs"))) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void identicalUploadsShareOneBlob() throws Exception {
+        var primero = storageService.store(imagen("vader.png", "mismos bytes"));
+        var segundo = storageService.store(imagen("vader.png", "mismos bytes"));
+        var digest = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest("mismos bytes".getBytes(StandardCharsets.UTF_8)));
+
+        assertAll(
+                () -> assertNotEquals(primero, segundo),
+                () -> assertEquals(storageService.load(primero), storageService.load(segundo)),
+                () -> assertEquals(digest, storageService.load(primero).getFileName().toString()),
+                () -> assertEquals(1, blobs()),
+                () -> assertEquals("mismos bytes", storageService.loadAsResource(segundo).getContentAsString(StandardCharsets.UTF_8)),
+                () -> assertEquals(2, storageService.loadAll().count())
+        );
+    }
+
+    @Test
+    void blobIsRemovedWithItsLastReference() throws Exception {
+        var primero = storageService.store(imagen("vader.png", "compartido"));
+        var segundo = storageService.store(imagen("yoda.png", "compartido"));
+        var otro = storageService.store(imagen("goku.png", "distinto"));
+        var blob = storageService.load(primero);
+
+        storageService.delete(primero);
+        assertTrue(Files.exists(blob));
+        assertEquals(2, blobs());
+
+        storageService.delete(segundo);
+        assertFalse(Files.exists(blob));
+        assertEquals(1, blobs());
+        assertTrue(Files.exists(storageService.load(otro)));
+    }
+
+    @Test
+    void deleteAllRemovesBlobsAndMappings() throws Exception {
+        storageService.store(imagen("vader.png", "uno"));
+        storageService.store(imagen("yoda.png", "dos"));
+
+        storageService.deleteAll();
+
+        assertAll(
+                () -> assertEquals(0, ficheroRepository.count()),
+                () -> assertEquals(0, Files.list(root).count())
+        );
+    }
+
+    @Test
+    void streamedUploadsShareBlobsWithMultipartUploads() throws Exception {
+        var primero = storageService.store(imagen("vader.png", "mismos bytes"));
+        var segundo = storageService.store("vader.png",
+                new ByteArrayInputStream("mismos bytes".getBytes(StandardCharsets.UTF_8)), 1024);
+
+        assertAll(
+                () -> assertEquals(storageService.load(primero), storageService.load(segundo.getNombre())),
+                () -> assertEquals(storageService.load(primero).getFileName().toString(), segundo.getDigest()),
+                () -> assertEquals(1, blobs()),
+                () -> assertEquals(2, ficheroRepository.count())
+        );
+    }
+
+    @Test
+    void mappingsAreRebuiltFromDiskAfterRestart() throws Exception {
+        var primero = storageService.store(imagen("vader.png", "compartido"));
+        var segundo = storageService.store(imagen("yoda.png", "compartido"));
+        var blob = storageService.load(primero);
+        // La base de datos en memoria se pierde al reiniciar, los ficheros no
+        ficheroRepository.deleteAllInBatch();
+        entityManager.clear();
+
+        var reiniciado = new StorageServiceImpl(root.toString(), true, ficheroRepository, 0, null, null);
+        reiniciado.init();
+        reiniciado.delete(primero);
+
+        assertAll(
+                () -> assertEquals(1, ficheroRepository.count()),
+                () -> assertEquals(blob, reiniciado.load(segundo)),
+                () -> assertTrue(Files.exists(blob)),
+                () -> assertEquals("compartido", reiniciado.loadAsResource(segundo).getContentAsString(StandardCharsets.UTF_8))
+        );
+    }
+}
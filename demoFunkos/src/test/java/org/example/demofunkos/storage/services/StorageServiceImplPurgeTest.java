@@ -0,0 +1,103 @@
+package org.example.demofunkos.storage.services;
+
+import org.example.demofunkos.storage.models.ResultadoPurga;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageServiceImplPurgeTest {
+
+    @TempDir
+    private Path dir;
+
+    private Path root;
+    private StorageServiceImpl storageService;
+
+    @BeforeEach
+    void setUp() {
+        root = dir.resolve("imgs");
+        storageService = new StorageServiceImpl(root.toString(), false, null, 2, null, null);
+        storageService.init();
+    }
+
+    private long entradas(Path path) throws Exception {
+        try (var files = Files.list(path)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void deleteAllAsyncRenamesRootAndPurgesInBackground() throws Exception {
+        for (int i = 0; i < 600; i++) {
+            storageService.store(new MockMultipartFile("file", "imagen" + i + ".png", "image/png", new byte[]{1}));
+        }
+
+        var purga = storageService.deleteAllAsync(4);
+        assertFalse(Files.exists(root));
+        storageService.init();
+        var nuevo = storageService.store(new MockMultipartFile("file", "vader.png", "image/png", new byte[]{1}));
+        ResultadoPurga resultado = purga.get(30, TimeUnit.SECONDS);
+
+        assertAll(
+                () -> assertTrue(resultado.ficheros() >= 600),
+                () -> assertTrue(resultado.directorios() > 1),
+                () -> assertEquals(0, resultado.fallos()),
+                () -> assertTrue(resultado.ficherosPorSegundo() > 0),
+                () -> assertEquals(1, entradas(dir)),
+                () -> assertTrue(Files.exists(storageService.load(nuevo)))
+        );
+    }
+
+    @Test
+    void deleteAllAsyncToleratesMissingRoot() throws Exception {
+        Files.delete(root);
+
+        assertEquals(ResultadoPurga.VACIO, storageService.deleteAllAsync(2).get(30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void deleteAllAsyncFinishesPurgesLeftByAPreviousRun() throws Exception {
+        Path pendiente = Files.createDirectories(dir.resolve("imgs.purga-1").resolve("ab"));
+        Files.writeString(pendiente.resolve("viejo.png"), "viejo");
+
+        var resultado = storageService.deleteAllAsync(2).get(30, TimeUnit.SECONDS);
+
+        assertAll(
+                () -> assertEquals(1, resultado.ficheros()),
+                () -> assertEquals(0, entradas(dir))
+        );
+    }
+
+    @Test
+    void deleteAllAsyncPurgesInPlaceWhenRootCannotBeRenamed() throws Exception {
+        var sinRenombrar = new StorageServiceImpl(root.toString(), false, null, 2, null, null) {
+            @Override
+            void renombrar(Path origen, Path destino) throws IOException {
+                throw new IOException("rename no soportado");
+            }
+        };
+        for (int i = 0; i < 300; i++) {
+            sinRenombrar.store(new MockMultipartFile("file", "imagen" + i + ".png", "image/png", new byte[]{1}));
+        }
+
+        var purga = sinRenombrar.deleteAllAsync(4);
+        assertTrue(purga.isDone());
+        ResultadoPurga resultado = purga.get();
+
+        assertAll(
+                () -> assertTrue(resultado.ficheros() >= 300),
+                () -> assertEquals(0, resultado.fallos()),
+                () -> assertTrue(Files.isDirectory(root)),
+                () -> assertEquals(0, entradas(root)),
+                () -> assertEquals(1, entradas(dir))
+        );
+    }
+}
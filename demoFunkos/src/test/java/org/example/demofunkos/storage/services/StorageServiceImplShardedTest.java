@@ -0,0 +1,98 @@
+package org.example.demofunkos.storage.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageServiceImplShardedTest {
+
+    @TempDir
+    private Path root;
+
+    private StorageServiceImpl storageService;
+
+    @BeforeEach
+    void setUp() {
+        storageService = new StorageServiceImpl(root.toString(), false, null, 2, null, null);
+        storageService.init();
+    }
+
+    private static MockMultipartFile imagen(String nombre, String contenido) {
+        return new MockMultipartFile("file", nombre, "image/png", contenido.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void storeWritesIntoTwoLevelsOfSubdirectories() throws Exception {
+        var nombre = storageService.store(imagen("vader.png", "vader"));
+        var path = storageService.load(nombre);
+
+        assertAll(
+                () -> assertTrue(Files.isRegularFile(path)),
+                () -> assertEquals(3, root.relativize(path).getNameCount()),
+                () -> assertEquals(2, root.relativize(path).getName(0).toString().length()),
+                () -> assertEquals("vader", storageService.loadAsResource(nombre).getContentAsString(StandardCharsets.UTF_8))
+        );
+    }
+
+    @Test
+    void loadAllListsFileNamesAcrossShards() {
+        var primero = storageService.store(imagen("vader.png", "vader"));
+        var segundo = storageService.store(imagen("yoda.png", "yoda"));
+
+        var nombres = storageService.loadAll().map(Path::toString).toList();
+
+        assertAll(
+                () -> assertEquals(2, nombres.size()),
+                () -> assertTrue(nombres.containsAll(List.of(primero, segundo)))
+        );
+    }
+
+    @Test
+    void loadFallsBackToFlatFilesUntilMigrated() throws Exception {
+        Files.writeString(root.resolve("antiguo.png"), "antiguo");
+
+        var antes = storageService.load("antiguo.png");
+        var migrados = storageService.migrate();
+        var despues = storageService.load("antiguo.png");
+
+        assertAll(
+                () -> assertEquals(root.resolve("antiguo.png"), antes),
+                () -> assertEquals(1, migrados),
+                () -> assertFalse(Files.exists(root.resolve("antiguo.png"))),
+                () -> assertEquals(3, root.relativize(despues).getNameCount()),
+                () -> assertEquals("antiguo", Files.readString(despues)),
+                () -> assertEquals(0, storageService.migrate())
+        );
+    }
+
+    @Test
+    void deleteRemovesShardedFile() {
+        var nombre = storageService.store(imagen("vader.png", "vader"));
+
+        storageService.delete(nombre);
+
+        assertAll(
+                () -> assertFalse(Files.exists(storageService.load(nombre))),
+                () -> assertEquals(0, storageService.loadAll().count())
+        );
+    }
+
+    @Test
+    void deleteAllRemovesShardDirectories() throws Exception {
+        storageService.store(imagen("vader.png", "vader"));
+
+        storageService.deleteAll();
+
+        try (var files = Files.list(root)) {
+            assertEquals(0, files.count());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.example.demofunkos.storage.services;
+
+import org.example.demofunkos.storage.exceptions.StorageBadRequest;
+import org.example.demofunkos.storage.exceptions.StoragePayloadTooLarge;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageServiceImplStreamingTest {
+
+    @TempDir
+    private Path root;
+
+    private StorageServiceImpl storageService;
+
+    @BeforeEach
+    void setUp() {
+        storageService = new StorageServiceImpl(root.toString(), false, null, 2, null, null);
+        storageService.init();
+    }
+
+    private static ByteArrayInputStream cuerpo(String contenido) {
+        return new ByteArrayInputStream(contenido.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long ficheros() throws Exception {
+        try (var files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    @Test
+    void storeStreamWritesFileAndReturnsChecksum() throws Exception {
+        var fichero = storageService.store("vader.png", cuerpo("vader"), 1024);
+        var digest = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest("vader".getBytes(StandardCharsets.UTF_8)));
+
+        assertAll(
+                () -> assertTrue(fichero.getNombre().endsWith("_vader.png")),
+                () -> assertEquals(5, fichero.getTamano()),
+                () -> assertEquals(digest, fichero.getDigest()),
+                () -> assertEquals("vader", Files.readString(storageService.load(fichero.getNombre()))),
+                () -> assertEquals(1, ficheros())
+        );
+    }
+
+    @Test
+    void storeStreamKeepsFilenamesWithoutExtension() throws Exception {
+        var sinExtension = storageService.store("README", cuerpo("leeme"), 1024);
+        var dobleExtension = storageService.store("copia.png.png", cuerpo("copia"), 1024);
+
+        assertAll(
+                () -> assertTrue(sinExtension.getNombre().endsWith("_README"), sinExtension.getNombre()),
+                () -> assertTrue(dobleExtension.getNombre().endsWith("_copia.png.png"), dobleExtension.getNombre()),
+                () -> assertEquals("leeme", Files.readString(storageService.load(sinExtension.getNombre())))
+        );
+    }
+
+    @Test
+    void storeStreamRejectsBodiesOverTheLimitWithoutLeavingFiles() throws Exception {
+        assertThrows(StoragePayloadTooLarge.class, () -> storageService.store("vader.png", cuerpo("x".repeat(2048)), 1024));
+
+        assertEquals(0, ficheros());
+    }
+
+    @Test
+    void storeStreamRejectsEmptyBodies() throws Exception {
+        assertThrows(StorageBadRequest.class, () -> storageService.store("vader.png", cuerpo(""), 1024));
+
+        assertEquals(0, ficheros());
+    }
+
+    @Test
+    void storeStreamRejectsPathsOutsideTheRoot() {
+        assertAll(
+                () -> assertThrows(StorageBadRequest.class, () -> storageService.store("../vader.png", cuerpo("vader"), 1024)),
+                () -> assertThrows(StorageBadRequest.class, () -> storageService.store("otro/vader.png", cuerpo("vader"), 1024)),
+                () -> assertThrows(StorageBadRequest.class, () -> storageService.store("", cuerpo("vader"), 1024))
+        );
+    }
+}
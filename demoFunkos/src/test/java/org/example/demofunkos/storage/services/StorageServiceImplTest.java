@@ -35,7 +35,7 @@ class StorageServiceImplTest {
     @BeforeEach
     void setUp() {
         mockRootLocation = Paths.get("test_imgs");
-        storageServiceImpl = new StorageServiceImpl(mockRootLocation.toString());
+        storageServiceImpl = new StorageServiceImpl(mockRootLocation.toString(), false, null, 0, null, null);
     }
 
     @Test
@@ -57,6 +57,19 @@ class StorageServiceImplTest {
         verify(multipartFile, times(1)).getInputStream();
     }
 
+    @Test
+    void storeFileWithoutExtension() throws IOException {
+        when(multipartFile.getOriginalFilename()).thenReturn("README");
+        when(multipartFile.isEmpty()).thenReturn(false);
+        when(multipartFile.getInputStream()).thenReturn(InputStream.nullInputStream());
+
+        String storedFilename = storageServiceImpl.store(multipartFile);
+        assertAll(
+                () -> assertTrue(storedFilename.endsWith("_README")),
+                () -> assertFalse(storedFilename.contains("null"))
+        );
+    }
+
     @Test
     void storeEmptyFile() {
         String filename = "test-image.png";
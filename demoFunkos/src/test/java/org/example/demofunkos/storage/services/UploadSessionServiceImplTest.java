@@ -0,0 +1,198 @@
+package org.example.demofunkos.storage.services;
+
+import org.example.demofunkos.storage.dto.IniciarSubidaDto;
+import org.example.demofunkos.storage.exceptions.StorageBadRequest;
+import org.example.demofunkos.storage.exceptions.StorageNotFound;
+import org.example.demofunkos.storage.exceptions.StoragePayloadTooLarge;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadSessionServiceImplTest {
+
+    @TempDir
+    private Path root;
+
+    private StorageServiceImpl storageService;
+    private UploadSessionServiceImpl uploadSessionService;
+
+    @BeforeEach
+    void setUp() {
+        storageService = new StorageServiceImpl(root.toString(), false, null, 2, null, null);
+        storageService.init();
+        uploadSessionService = new UploadSessionServiceImpl(storageService, root.toString(), DataSize.ofKilobytes(64),
+                DataSize.ofKilobytes(4), DataSize.ofKilobytes(1), 2, Duration.ofMinutes(10));
+    }
+
+    private static ByteArrayInputStream cuerpo(String contenido) {
+        return new ByteArrayInputStream(contenido.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long partes() throws Exception {
+        Path uploads = root.resolve(UploadSessionServiceImpl.UPLOADS_DIR);
+        if (!Files.exists(uploads)) {
+            return 0;
+        }
+        try (var files = Files.list(uploads)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void chunksUploadedOutOfOrderAndInParallelAssembleTheFile() throws Exception {
+        String contenido = IntStream.range(0, 10).mapToObj(i -> String.valueOf(i).repeat(4)).reduce("", String::concat) + "fin";
+        var sesion = uploadSessionService.iniciar(new IniciarSubidaDto("vader.png", (long) contenido.length(), 4));
+        assertEquals(11, sesion.chunks());
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = sesion.chunks() - 1; i >= 0; i--) {
+                int index = i;
+                executor.submit(() -> uploadSessionService.subirChunk(sesion.id(), index,
+                        cuerpo(contenido.substring(index * 4, Math.min(contenido.length(), index * 4 + 4)))));
+            }
+        }
+        var fichero = uploadSessionService.completar(sesion.id());
+
+        assertAll(
+                () -> assertEquals(contenido, Files.readString(storageService.load(fichero.getNombre()))),
+                () -> assertEquals(contenido.length(), fichero.getTamano()),
+                () -> assertEquals(0, partes()),
+                () -> assertThrows(StorageNotFound.class, () -> uploadSessionService.estado(sesion.id()))
+        );
+    }
+
+    @Test
+    void estadoListsPendingChunksToResume() {
+        var sesion = uploadSessionService.iniciar(new IniciarSubidaDto("vader.png", 10L, 4));
+
+        uploadSessionService.subirChunk(sesion.id(), 1, cuerpo("4567"));
+        var estado = uploadSessionService.estado(sesion.id());
+
+        assertAll(
+                () -> assertEquals(List.of(0, 2), estado.pendientes()),
+                () -> assertThrows(StorageBadRequest.class, () -> uploadSessionService.completar(sesion.id()))
+        );
+    }
+
+    @Test
+    void chunksWithTheWrongSizeAreRejectedAndCanBeRetried() {
+        var sesion = uploadSessionService.iniciar(new IniciarSubidaDto("vader.png", 10L, 4));
+
+        assertAll(
+                () -> assertThrows(StorageBadRequest.class, () -> uploadSessionService.subirChunk(sesion.id(), 0, cuerpo("01"))),
+                () -> assertThrows(StorageBadRequest.class, () -> uploadSessionService.subirChunk(sesion.id(), 0, cuerpo("012345"))),
+                () -> assertThrows(StorageBadRequest.class, () -> uploadSessionService.subirChunk(sesion.id(), 2, cuerpo("8"))),
+                () -> assertThrows(StorageBadRequest.class, () -> uploadSessionService.subirChunk(sesion.id(), 3, cuerpo("x"))),
+                () -> assertEquals(List.of(0, 1, 2), uploadSessionService.estado(sesion.id()).pendientes())
+        );
+
+        uploadSessionService.subirChunk(sesion.id(), 0, cuerpo("0123"));
+        uploadSessionService.subirChunk(sesion.id(), 1, cuerpo("4567"));
+        uploadSessionService.subirChunk(sesion.id(), 2, cuerpo("89"));
+
+        assertEquals(10, uploadSessionService.completar(sesion.id()).getTamano());
+    }
+
+    @Test
+    void aRejectedRetryLeavesTheChunkPending() {
+        var sesion = uploadSessionService.iniciar(new IniciarSubidaDto("vader.png", 10L, 4));
+        uploadSessionService.subirChunk(sesion.id(), 0, cuerpo("0123"));
+
+        assertThrows(StorageBadRequest.class, () -> uploadSessionService.subirChunk(sesion.id(), 0, cuerpo("012345")));
+
+        assertEquals(List.of(0, 1, 2), uploadSessionService.estado(sesion.id()).pendientes());
+    }
+
+    @Test
+    void iniciarEnforcesLimits() {
+        uploadSessionService.iniciar(new IniciarSubidaDto("uno.png", 10L, null));
+        uploadSessionService.iniciar(new IniciarSubidaDto("dos.png", 10L, null));
+
+        assertAll(
+                () -> assertThrows(StorageBadRequest.class, () -> uploadSessionService.iniciar(new IniciarSubidaDto("tres.png", 10L, null))),
+                () -> assertThrows(StoragePayloadTooLarge.class, () -> uploadSessionService.iniciar(new IniciarSubidaDto("grande.png", 65L * 1024, null))),
+                () -> assertThrows(StorageBadRequest.class, () -> uploadSessionService.iniciar(new IniciarSubidaDto("parte.png", 10L, 8 * 1024))),
+                () -> assertThrows(StorageBadRequest.class, () -> uploadSessionService.iniciar(new IniciarSubidaDto("../fuera.png", 10L, null)))
+        );
+    }
+
+    @Test
+    void idleSessionsExpireAndTheirPartsAreDeleted() throws Exception {
+        var sesion = uploadSessionService.iniciar(new IniciarSubidaDto("vader.png", 10L, 4));
+        uploadSessionService.subirChunk(sesion.id(), 0, cuerpo("0123"));
+
+        assertEquals(0, uploadSessionService.expirarSesiones(LocalDateTime.now()));
+        assertEquals(1, uploadSessionService.expirarSesiones(LocalDateTime.now().plusMinutes(11)));
+
+        assertAll(
+                () -> assertEquals(0, partes()),
+                () -> assertThrows(StorageNotFound.class, () -> uploadSessionService.subirChunk(sesion.id(), 1, cuerpo("4567")))
+        );
+    }
+
+    @Test
+    void aChunkInProgressKeepsTheSessionFromExpiring() throws Exception {
+        var sesion = uploadSessionService.iniciar(new IniciarSubidaDto("vader.png", 10L, 4));
+        var leyendo = new CountDownLatch(1);
+        var bloqueo = new CountDownLatch(1);
+        var lento = new FilterInputStream(cuerpo("0123")) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                leyendo.countDown();
+                try {
+                    bloqueo.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return super.read(b, off, len);
+            }
+        };
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var subida = executor.submit(() -> uploadSessionService.subirChunk(sesion.id(), 0, lento));
+            assertTrue(leyendo.await(5, TimeUnit.SECONDS));
+            // Caducada segun la actividad de cuando empezo la parte, pero no cuando termina
+            var ahora = uploadSessionService.estado(sesion.id()).expiraEn().plus(Duration.ofMillis(100));
+            var expiradas = executor.submit(() -> uploadSessionService.expirarSesiones(ahora));
+            Thread.sleep(300);
+            bloqueo.countDown();
+
+            assertAll(
+                    () -> assertEquals(List.of(1, 2), subida.get(5, TimeUnit.SECONDS).pendientes()),
+                    () -> assertEquals(0, expiradas.get(5, TimeUnit.SECONDS)),
+                    () -> assertEquals(List.of(1, 2), uploadSessionService.estado(sesion.id()).pendientes())
+            );
+        }
+    }
+
+    @Test
+    void cancelarDeletesTheSession() throws Exception {
+        var sesion = uploadSessionService.iniciar(new IniciarSubidaDto("vader.png", 10L, 4));
+
+        uploadSessionService.cancelar(sesion.id());
+
+        assertAll(
+                () -> assertEquals(0, partes()),
+                () -> assertThrows(StorageNotFound.class, () -> uploadSessionService.cancelar(sesion.id())),
+                () -> assertEquals(0, storageService.loadAll().count())
+        );
+    }
+}